@@ -0,0 +1,149 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A backlog of {@link LogItem}s written to a gzipped log file as they're added, to be sent as a single attachment
+ * instead of as live messages when the handler has fallen too far behind, along with a summary of what's in it.
+ * The file is kept within {@link MessageLimits#MAX_ATTACHMENT_SIZE}: once the next line could exceed it, that line and
+ * all following are only counted in the summary.
+ * @see HandlerConfig#getBacklogSpillThreshold()
+ */
+public class BacklogSpill {
+
+    private static final DateTimeFormatter LINE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+    private static final int SUMMARIZED_LOGGERS = 10;
+
+    /**
+     * Room kept free for compressed output still held back by the compressor, which isn't in {@link #bytes} yet
+     */
+    private static final int PENDING_OUTPUT_HEADROOM = 128 * 1024;
+
+    private final HandlerConfig config;
+    private final int maxSize;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Writer writer;
+    private final Map<LogLevel, Integer> levelCounts = new EnumMap<>(LogLevel.class);
+    private final Map<String, Integer> loggerCounts = new HashMap<>();
+    @Getter private final String fileName;
+    @Getter private int lines = 0;
+    @Getter private int droppedLines = 0;
+
+    public BacklogSpill(@NotNull HandlerConfig config) {
+        this(config, MessageLimits.MAX_ATTACHMENT_SIZE);
+    }
+    BacklogSpill(@NotNull HandlerConfig config, int maxSize) {
+        this.config = config;
+        this.maxSize = maxSize;
+        this.fileName = "backlog-" + FILE_TIME_FORMAT.format(Instant.now()) + ".log.gz";
+        try {
+            this.writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible in memory
+        }
+    }
+
+    /**
+     * Write an item to the file as a plain line, with its complete stack trace, and count it in the summary.
+     * If the line could take the file past its maximum size, it's dropped instead, as are all items added after it.
+     * @param item the item to write
+     */
+    public void add(@NotNull LogItem item) {
+        String loggerName = config.resolveLoggerName(item.getLogger());
+        if (loggerName == null) loggerName = String.valueOf(item.getLogger());
+        int count = 1 + item.getRepeats();
+        levelCounts.merge(item.getLevel(), count, Integer::sum);
+        loggerCounts.merge(loggerName, count, Integer::sum);
+        lines += count;
+        if (droppedLines > 0) {
+            droppedLines += count;
+            return;
+        }
+
+        StringBuilder line = new StringBuilder()
+                .append(LINE_TIME_FORMAT.format(Instant.ofEpochMilli(item.getTimestamp())))
+                .append(' ').append(item.getLevel().name())
+                .append(" [").append(loggerName).append("] ");
+        String message = item.getMessage();
+        if (message != null) line.append(message);
+        if (item.getRepeats() > 0) line.append(" (\u00D7").append(item.getRepeats() + 1).append(')');
+        line.append('\n');
+        if (item.getThrowable() != null) line.append(StackTraceRenderer.print(item.getThrowable()));
+
+        // compressing never grows a line by much, while encoding it may take up to 3 bytes per character
+        if ((long) bytes.size() + PENDING_OUTPUT_HEADROOM + line.length() * 3L > maxSize) {
+            droppedLines = count;
+            return;
+        }
+        try {
+            writer.write(line.toString());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible in memory
+        }
+    }
+
+    /**
+     * Finish the file, after which no more items can be added
+     * @return the gzipped content of the file
+     */
+    public byte[] finish() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible in memory
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A short summary of the backlog for the message the file is attached to: the amount of lines, and how many
+     * there were of each level and from the loggers with the most lines, and how many were dropped from the file
+     * @return the summary, well within {@link MessageLimits#MAX_CONTENT_LENGTH}
+     */
+    public @NotNull String getSummary() {
+        StringBuilder summary = new StringBuilder()
+                .append("Caught up on a backlog of ").append(lines).append(" lines, attached as ").append(fileName);
+        if (droppedLines > 0) summary.append(" (the last ").append(droppedLines).append(" lines were dropped to stay within the upload limit)");
+        if (lines == 0) return summary.toString();
+
+        summary.append("\nLevels:");
+        boolean first = true;
+        for (int i = LogLevel.values().length - 1; i >= 0; i--) {
+            Integer count = levelCounts.get(LogLevel.values()[i]);
+            if (count == null) continue;
+            if (!first) summary.append(',');
+            summary.append(' ').append(LogLevel.values()[i].name()).append(' ').append(count);
+            first = false;
+        }
+
+        List<Map.Entry<String, Integer>> loggers = new ArrayList<>(loggerCounts.entrySet());
+        loggers.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        summary.append("\nLoggers:");
+        for (int i = 0; i < Math.min(SUMMARIZED_LOGGERS, loggers.size()); i++) {
+            String name = loggers.get(i).getKey();
+            if (name.length() > 64) name = name.substring(0, 63) + "\u2026";
+            if (i > 0) summary.append(',');
+            summary.append(' ').append(name).append(' ').append(loggers.get(i).getValue());
+        }
+        if (loggers.size() > SUMMARIZED_LOGGERS) summary.append(" and ").append(loggers.size() - SUMMARIZED_LOGGERS).append(" more");
+        return summary.toString();
+    }
+
+}
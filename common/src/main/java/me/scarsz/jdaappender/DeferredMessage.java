@@ -0,0 +1,67 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A log message kept in its unformatted form, such as a pattern and its arguments, that is only rendered to a
+ * {@link String} once the {@link LogItem} holding it has survived filtering on the flushing thread
+ */
+public final class DeferredMessage {
+
+    private final Renderer renderer;
+    private final Object source;
+    private final Object[] arguments;
+
+    public DeferredMessage(@NotNull Renderer renderer, @Nullable Object source, @Nullable Object[] arguments) {
+        this.renderer = renderer;
+        this.source = source;
+        this.arguments = arguments;
+    }
+
+    /**
+     * @return the rendered message, still containing any ANSI escape codes
+     */
+    public @Nullable String render() {
+        return renderer.render(source, arguments);
+    }
+
+    /**
+     * Whether rendering the given arguments later gives the same result as rendering them now, from any thread:
+     * true if every argument is null, a {@link String}, a boxed primitive or an enum constant.
+     * Anything else may be changed by the caller after logging it, so a message with such arguments has to be
+     * rendered right away instead.
+     * @param arguments the arguments to check
+     * @return true if the arguments are known to be immutable
+     */
+    public static boolean isImmutable(@Nullable Object[] arguments) {
+        if (arguments == null) return true;
+        for (Object argument : arguments) {
+            if (argument == null || argument instanceof Enum) continue;
+            Class<?> type = argument.getClass();
+            if (type != String.class && type != Integer.class && type != Long.class && type != Double.class
+                    && type != Float.class && type != Short.class && type != Byte.class && type != Character.class
+                    && type != Boolean.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int estimateSize(@Nullable Object source, @Nullable Object[] arguments) {
+        return (source instanceof String ? ((String) source).length() * 2 : 256)
+                + (arguments != null ? arguments.length * 32 : 0);
+    }
+
+    /**
+     * Renders the message source and arguments of a {@link DeferredMessage}, for example by substituting the
+     * arguments into a pattern the way the originating logging framework would
+     */
+    @FunctionalInterface
+    public interface Renderer {
+
+        @Nullable String render(@Nullable Object source, @Nullable Object[] arguments);
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Immutable, precompiled snapshot of a {@link HandlerConfig}'s enabled levels and ignored logger prefixes.
+ * Used by the logging adapters to reject events on the logging thread before any work is done for them.
+ * Only the leading prefix-based logger mappings are compiled; loggers that aren't decided by them are accepted here
+ * and left for the handler to resolve on the flushing thread.
+ * @see HandlerConfig#getEventFilter()
+ */
+public final class EventFilter {
+
+    private final EnumSet<LogLevel> levelSet;
+    private final boolean[] levels;
+    private final String[] prefixes;
+    private final boolean[] ignored;
+
+    EventFilter(@NotNull Set<LogLevel> levels, @NotNull Map<Predicate<String>, Function<String, String>> loggerMappings) {
+        this.levelSet = levels.isEmpty() ? EnumSet.noneOf(LogLevel.class) : EnumSet.copyOf(levels);
+        this.levels = new boolean[LogLevel.values().length];
+        for (LogLevel level : levels) this.levels[level.ordinal()] = true;
+
+        List<String> prefixes = new ArrayList<>();
+        List<Boolean> ignored = new ArrayList<>();
+        for (Map.Entry<Predicate<String>, Function<String, String>> entry : loggerMappings.entrySet()) {
+            // mappings are matched in order, arbitrary predicates make anything after them undecidable here
+            if (!(entry.getKey() instanceof HandlerConfig.PrefixPredicate)) break;
+            prefixes.add(((HandlerConfig.PrefixPredicate) entry.getKey()).getPrefix());
+            ignored.add(entry.getValue() == HandlerConfig.IGNORE);
+        }
+        this.prefixes = prefixes.toArray(new String[0]);
+        this.ignored = new boolean[prefixes.size()];
+        for (int i = 0; i < this.ignored.length; i++) this.ignored[i] = ignored.get(i);
+    }
+
+    /**
+     * Whether an event of the given level from the given logger could be processed by the handler
+     * @param level the level of the event
+     * @param logger the name of the logger that produced the event
+     * @return false if the event will definitely be discarded
+     */
+    public boolean accepts(@NotNull LogLevel level, @Nullable String logger) {
+        if (!levels[level.ordinal()]) return false;
+        if (logger == null) logger = ""; // as the handler buffers anonymous loggers
+        for (int i = 0; i < prefixes.length; i++) {
+            if (logger.startsWith(prefixes[i])) return !ignored[i];
+        }
+        return true;
+    }
+
+    /**
+     * Whether this snapshot still reflects the given enabled levels
+     */
+    boolean matches(@NotNull Set<LogLevel> levels) {
+        return levelSet.equals(levels);
+    }
+
+}
@@ -0,0 +1,63 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups repeats of the same exception into the first {@link LogItem} that logged it, for as long as that item is
+ * waiting to be sent or part of the live message, and the exception keeps recurring within
+ * {@link HandlerConfig#getExceptionGroupingWindow()}. Exceptions are matched by {@link HandlerConfig#getExceptionGroupingKey()}.
+ * Not thread-safe; guarded by the handler's stack.
+ */
+public class ExceptionGroups {
+
+    private final HandlerConfig config;
+    private final Map<Object, LogItem> heads = new HashMap<>();
+
+    public ExceptionGroups(@NotNull HandlerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Count the item as a repeat of an earlier item with the same exception, if there's one to group it into.
+     * Otherwise, the item becomes the one that later repeats are grouped into.
+     * @param item the item to group
+     * @return the item that the given item was counted as a repeat of, null if it wasn't grouped and should be logged
+     */
+    public LogItem group(@NotNull LogItem item) {
+        long window = config.getExceptionGroupingWindow();
+        Throwable throwable = item.getThrowable();
+        if (window <= 0 || throwable == null) return null;
+
+        Object key = config.getExceptionGroupingKey().apply(throwable);
+        if (key == null) return null;
+
+        LogItem head = heads.get(key);
+        if (head != null && item.getTimestamp() - head.getLastOccurrence() <= window) {
+            head.addRepeat(item.getTimestamp());
+            return head;
+        }
+
+        heads.put(key, item);
+        return null;
+    }
+
+    /**
+     * Stop grouping into the given items, as they're no longer part of the live message
+     * @param items the items that were sent for the last time
+     */
+    public void retire(@NotNull Collection<LogItem> items) {
+        if (!heads.isEmpty()) heads.values().removeIf(items::contains);
+    }
+
+    /**
+     * Stop grouping into any items
+     */
+    public void clear() {
+        heads.clear();
+    }
+
+}
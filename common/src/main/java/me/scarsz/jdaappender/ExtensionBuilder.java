@@ -1,21 +1,22 @@
 package me.scarsz.jdaappender;
 
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import java.util.function.Function;
 
 public class ExtensionBuilder {
 
-    private static final Date DATE = new Date();
-    private static final SimpleDateFormat DATE_FORMAT = utc(new SimpleDateFormat("MM/dd"));
-    private static final SimpleDateFormat DATE_FORMAT_YEAR = utc(new SimpleDateFormat("MM/dd/yyyy"));
-    private static final SimpleDateFormat TIME_FORMAT_12 = utc(new SimpleDateFormat("h:mm:ss aa"));
-    private static final SimpleDateFormat TIME_FORMAT_24 = utc(new SimpleDateFormat("H:mm:ss"));
+    private static final DateTimeFormatter DATE_FORMAT = utc(DateTimeFormatter.ofPattern("MM/dd"));
+    private static final DateTimeFormatter DATE_FORMAT_YEAR = utc(DateTimeFormatter.ofPattern("MM/dd/yyyy"));
+    private static final DateTimeFormatter TIME_FORMAT_12 = utc(DateTimeFormatter.ofPattern("h:mm:ss a"));
+    private static final DateTimeFormatter TIME_FORMAT_24 = utc(DateTimeFormatter.ofPattern("H:mm:ss"));
 
-    private final List<Function<LogItem, String>> functions = new LinkedList<>();
+    private final List<ExtensionFormatter.Segment> segments = new ArrayList<>();
     private final HandlerConfig config;
 
     public ExtensionBuilder(HandlerConfig config) {
@@ -23,64 +24,122 @@ public class ExtensionBuilder {
     }
 
     public ExtensionBuilder space() {
-        this.functions.add(item -> " ");
-        return this;
+        return text(" ");
     }
     public ExtensionBuilder text(String str) {
-        this.functions.add(item -> str);
+        this.segments.add((builder, item) -> builder.append(str));
         return this;
     }
     public ExtensionBuilder level() {
-        this.functions.add(item -> item.getLevel().name());
+        this.segments.add((builder, item) -> builder.append(item.getLevel().name()));
         return this;
     }
     public ExtensionBuilder levelPadded() {
-        this.functions.add(item -> config.pad(item.getLevel().name(), LogLevel.MAX_NAME_LENGTH));
+        String[] names = new String[LogLevel.values().length];
+        for (LogLevel level : LogLevel.values()) {
+            names[level.ordinal()] = config.pad(level.name(), LogLevel.MAX_NAME_LENGTH);
+        }
+        this.segments.add((builder, item) -> builder.append(names[item.getLevel().ordinal()]));
         return this;
     }
     public ExtensionBuilder logger() {
-        this.functions.add(item -> config.resolveLoggerName(item.getLogger()));
+        this.segments.add((builder, item) -> builder.append(config.resolveLoggerName(item.getLogger())));
         return this;
     }
     public ExtensionBuilder loggerPadded() {
-        this.functions.add(item -> config.pad(config.resolveLoggerName(item.getLogger()), config.getLoggerNamePadding()));
+        this.segments.add((builder, item) -> appendPadded(builder, config.resolveLoggerName(item.getLogger()), config.getLoggerNamePadding()));
         return this;
     }
     public ExtensionBuilder time12Hours() {
-        return timestamp(TIME_FORMAT_12);
+        return timestampCached(TIME_FORMAT_12);
     }
     public ExtensionBuilder time24Hours() {
-        return timestamp(TIME_FORMAT_24);
+        return timestampCached(TIME_FORMAT_24);
     }
     public ExtensionBuilder date() {
-        return timestamp(DATE_FORMAT);
+        return timestampCached(DATE_FORMAT);
     }
     public ExtensionBuilder dateWithYear() {
-        return timestamp(DATE_FORMAT_YEAR);
+        return timestampCached(DATE_FORMAT_YEAR);
+    }
+    public ExtensionBuilder timestamp(DateTimeFormatter format) {
+        DateTimeFormatter zoned = format.getZone() != null ? format : utc(format);
+        this.segments.add((builder, item) -> zoned.formatTo(Instant.ofEpochMilli(item.getTimestamp()), builder));
+        return this;
     }
     public ExtensionBuilder timestamp(SimpleDateFormat format) {
-        this.functions.add(item -> {
-            synchronized (DATE) {
-                DATE.setTime(item.getTimestamp());
-                return format.format(DATE);
-            }
-        });
+        // SimpleDateFormat isn't thread-safe, give each thread its own copy instead of locking a shared one
+        ThreadLocal<SimpleDateFormat> formats = ThreadLocal.withInitial(() -> (SimpleDateFormat) format.clone());
+        this.segments.add((builder, item) -> builder.append(formats.get().format(new Date(item.getTimestamp()))));
+        return this;
+    }
+
+    /**
+     * Add a timestamp rendered with a formatter that has no fields finer than seconds,
+     * rendering it once per second instead of once per line
+     */
+    private ExtensionBuilder timestampCached(DateTimeFormatter format) {
+        this.segments.add(new SecondCachedTimestamp(format));
         return this;
     }
 
+    /**
+     * @return the formatter, an {@link ExtensionFormatter} that {@link LogItem} appends to its output directly
+     */
     public Function<LogItem, String> build() {
-        return logItem -> {
-            StringBuilder builder = new StringBuilder();
-            for (Function<LogItem, String> function : functions) {
-                builder.append(function.apply(logItem));
+        return new ExtensionFormatter(segments);
+    }
+
+    /**
+     * Append the string to the builder the same way as {@link HandlerConfig#pad(String, int)} would pad it
+     */
+    private static void appendPadded(StringBuilder builder, String string, int to) {
+        if (string == null) string = "";
+        int padding = Math.abs(to) - string.length();
+        if (to < 0) for (int i = 0; i < padding; i++) builder.append(' ');
+        builder.append(string);
+        if (to > 0) for (int i = 0; i < padding; i++) builder.append(' ');
+    }
+
+    private static DateTimeFormatter utc(DateTimeFormatter format) {
+        return format.withZone(ZoneOffset.UTC);
+    }
+
+    /**
+     * Timestamp segment that keeps the text of the most recently rendered second
+     */
+    private static final class SecondCachedTimestamp implements ExtensionFormatter.Segment {
+
+        private final DateTimeFormatter format;
+        private volatile RenderedSecond last = new RenderedSecond(Long.MIN_VALUE, null);
+
+        private SecondCachedTimestamp(DateTimeFormatter format) {
+            this.format = format;
+        }
+
+        @Override
+        public void appendTo(StringBuilder builder, LogItem item) {
+            long second = Math.floorDiv(item.getTimestamp(), 1000);
+            RenderedSecond rendered = last;
+            if (rendered.second != second) {
+                rendered = new RenderedSecond(second, format.format(Instant.ofEpochSecond(second)));
+                last = rendered;
             }
-            return builder.toString();
-        };
+            builder.append(rendered.text);
+        }
+
     }
 
-    private static SimpleDateFormat utc(SimpleDateFormat format) {
-        format.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return format;
+    private static final class RenderedSecond {
+
+        private final long second;
+        private final String text;
+
+        private RenderedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+
     }
 
 }
@@ -0,0 +1,52 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Prefix or suffix formatter compiled by {@link ExtensionBuilder#build()}.
+ * Writes its segments straight into the builder of the line being formatted; {@link LogItem} recognizes it and
+ * calls {@link #appendTo(StringBuilder, LogItem)} instead of {@link #apply(LogItem)}.
+ */
+public final class ExtensionFormatter implements Function<LogItem, String> {
+
+    private static final ThreadLocal<StringBuilder> SCRATCH = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final Segment[] segments;
+
+    ExtensionFormatter(@NotNull List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[0]);
+    }
+
+    /**
+     * Append the formatted extension for the given item
+     * @param builder the builder to append to
+     * @param item the item to format the extension for
+     */
+    public void appendTo(@NotNull StringBuilder builder, @NotNull LogItem item) {
+        for (Segment segment : segments) {
+            segment.appendTo(builder, item);
+        }
+    }
+
+    @Override
+    public String apply(LogItem item) {
+        StringBuilder builder = SCRATCH.get();
+        builder.setLength(0);
+        appendTo(builder, item);
+        return builder.toString();
+    }
+
+    /**
+     * Part of an {@link ExtensionFormatter}
+     */
+    @FunctionalInterface
+    public interface Segment {
+
+        void appendTo(@NotNull StringBuilder builder, @NotNull LogItem item);
+
+    }
+
+}
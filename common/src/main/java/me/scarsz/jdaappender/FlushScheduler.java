@@ -0,0 +1,145 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Adaptively schedules the flushes of a logging handler.
+ * While flushes keep finding work they follow each other at the minimum delay; while idle, the delay doubles up to
+ * {@link HandlerConfig#getMaxFlushDelay()}. A backed-off schedule is pulled forward to the minimum delay by
+ * {@link #nudge()}, and {@link #wake()} runs a flush right away.
+ */
+public class FlushScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final HandlerConfig config;
+    private final BooleanSupplier task;
+    private final long minimumDelay;
+    private final AtomicBoolean wakeRequested = new AtomicBoolean();
+    private volatile boolean backedOff = false;
+    private long requestedDelay = -1;
+
+    private ScheduledFuture<?> future;
+    private long delay;
+    private boolean running = false;
+    private boolean shutdown = false;
+
+    /**
+     * @param executor the executor to run flushes on
+     * @param config the handler config to read the maximum delay from
+     * @param minimumDelay the delay in milliseconds between flushes while there is work
+     * @param task the flush to run, returning whether it found any work to do
+     */
+    public FlushScheduler(@NotNull ScheduledExecutorService executor, @NotNull HandlerConfig config, long minimumDelay, @NotNull BooleanSupplier task) {
+        this.executor = executor;
+        this.config = config;
+        this.minimumDelay = Math.max(1, minimumDelay);
+        this.task = task;
+        this.delay = this.minimumDelay;
+    }
+
+    /**
+     * Schedule the first flush
+     * @return this scheduler
+     */
+    public synchronized FlushScheduler start() {
+        if (future == null && !shutdown) {
+            future = executor.schedule(this::run, minimumDelay, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Run a flush as soon as possible
+     */
+    public void wake() {
+        if (wakeRequested.compareAndSet(false, true)) {
+            reschedule(0);
+        }
+    }
+
+    /**
+     * Run a flush within the given delay, such as when something held back can be sent by then
+     * @param delay the maximum delay in milliseconds until the next flush
+     */
+    public void wakeAfter(long delay) {
+        synchronized (this) {
+            requestedDelay = requestedDelay < 0 ? delay : Math.min(requestedDelay, delay);
+        }
+        reschedule(delay);
+    }
+
+    /**
+     * Pull the next flush forward to the minimum delay if the schedule has backed off because of inactivity.
+     * Cheap enough to be called for every enqueued log item.
+     */
+    public void nudge() {
+        if (backedOff) {
+            backedOff = false;
+            reschedule(minimumDelay);
+        }
+    }
+
+    private synchronized void reschedule(long newDelay) {
+        // a running flush reschedules itself when it's done, taking pending wake-ups into account
+        if (shutdown || running || future == null) return;
+        if (future.getDelay(TimeUnit.MILLISECONDS) <= newDelay) return;
+        if (future.cancel(false)) {
+            try {
+                future = executor.schedule(this::run, newDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {} // executor is shutting down
+        }
+    }
+
+    private void run() {
+        synchronized (this) {
+            if (shutdown) return;
+            running = true;
+        }
+        wakeRequested.set(false);
+
+        boolean worked = false;
+        try {
+            worked = task.getAsBoolean();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        synchronized (this) {
+            running = false;
+            if (shutdown) return;
+
+            long maximumDelay = Math.max(minimumDelay, config.getMaxFlushDelay());
+            delay = worked ? minimumDelay : Math.min(delay * 2, maximumDelay);
+            backedOff = delay > minimumDelay;
+            long nextDelay = wakeRequested.get() ? 0 : requestedDelay >= 0 ? Math.min(delay, requestedDelay) : delay;
+            requestedDelay = -1;
+            try {
+                future = executor.schedule(this::run, nextDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {} // executor is shutting down
+        }
+    }
+
+    /**
+     * @return the future of the next scheduled flush, null if none has been scheduled
+     */
+    public synchronized @Nullable ScheduledFuture<?> getFuture() {
+        return future;
+    }
+
+    /**
+     * Stop scheduling flushes. A flush that is currently running is allowed to complete, but doesn't schedule another.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (future != null) future.cancel(false);
+    }
+
+}
@@ -5,9 +5,19 @@ import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -21,15 +31,23 @@ public class HandlerConfig {
      * Message transformers that will be used to test incoming {@link LogItem}s before they are put in the queue.
      * Predicates should return {@code false} if it is neutral in respect to the LogItem; return {@code true} when the item should be modified/denied.
      * Can be used to block certain LogItems from being forwarded if, for example, it contains an unwanted message.
+     * Filters are tested before the other transformers, which then run in insertion order; a transformer returning {@code null} denies the item.
+     * @see #getTransformerChain()
      */
-    @Getter private final Map<Predicate<LogItem>, Function<String, String>> messageTransformers = new LinkedHashMap<>();
+    @Getter private final Map<Predicate<LogItem>, Function<String, String>> messageTransformers = new ObservedMap<>(() -> transformerChain = null);
+
+    /**
+     * Message transformer used by {@link #addFilter(Predicate)}. Transformers mapped to this are recognized as filters
+     * and tested before any other transformers.
+     */
+    public static final Function<String, String> DENY = s -> null;
 
     /**
      * Adds a message transformer that will deny messages when the specified {@link Predicate} is {@code true}.
      * @param filter the predicate to filter {@link LogItem}s by
      */
     public void addFilter(Predicate<LogItem> filter) {
-        messageTransformers.put(filter, s -> null);
+        messageTransformers.put(filter, DENY);
     }
 
     /**
@@ -40,26 +58,110 @@ public class HandlerConfig {
         messageTransformers.put(filter, transformer);
     }
 
+    /**
+     * Text that matches of keywords given to {@link #redactKeywords(Collection)} are replaced with.
+     * Default "****".
+     */
+    @Getter @Setter @NotNull private String redactionMask = "****";
+
+    private volatile KeywordMatcher deniedKeywordMatcher;
+    private volatile KeywordMatcher redactedKeywordMatcher;
+    private final Set<String> deniedKeywords = new LinkedHashSet<>();
+    private final Set<String> redactedKeywords = new LinkedHashSet<>();
+    private final Predicate<LogItem> deniedKeywordFilter = item -> item.getMessage() != null && deniedKeywordMatcher.find(item.getMessage());
+    private final Predicate<LogItem> redactedKeywordFilter = item -> item.getMessage() != null;
+    private final Function<String, String> redactedKeywordTransformer = message -> redactedKeywordMatcher.redact(message, redactionMask);
+
+    /**
+     * Deny messages containing any of the given keywords.
+     * All denied keywords are compiled into a single {@link KeywordMatcher}, so each message is scanned once
+     * regardless of the amount of keywords. Added to the {@link #messageTransformers} as a single filter.
+     * @param keywords literal keywords, or keywords ending in {@code *} to also match any non-whitespace characters following them
+     * @see KeywordMatcher
+     */
+    public void denyKeywords(@NotNull Collection<String> keywords) {
+        deniedKeywords.addAll(keywords);
+        deniedKeywordMatcher = new KeywordMatcher(deniedKeywords);
+        messageTransformers.putIfAbsent(deniedKeywordFilter, DENY);
+    }
+    /**
+     * See {@link #denyKeywords(Collection)}
+     */
+    public void denyKeywords(@NotNull String... keywords) {
+        denyKeywords(Arrays.asList(keywords));
+    }
+
+    /**
+     * Replace every occurrence of any of the given keywords in messages with the {@link #redactionMask}.
+     * All redacted keywords are compiled into a single {@link KeywordMatcher}, so each message is scanned once
+     * regardless of the amount of keywords. Added to the {@link #messageTransformers} as a single transformer.
+     * <pre>
+     * // mask tokens and passwords given as "key=value" pairs
+     * handlerConfig.redactKeywords("token=*", "password=*");
+     * </pre>
+     * @param keywords literal keywords, or keywords ending in {@code *} to also match any non-whitespace characters following them
+     * @see KeywordMatcher
+     */
+    public void redactKeywords(@NotNull Collection<String> keywords) {
+        redactedKeywords.addAll(keywords);
+        redactedKeywordMatcher = new KeywordMatcher(redactedKeywords);
+        messageTransformers.putIfAbsent(redactedKeywordFilter, redactedKeywordTransformer);
+    }
+    /**
+     * See {@link #redactKeywords(Collection)}
+     */
+    public void redactKeywords(@NotNull String... keywords) {
+        redactKeywords(Arrays.asList(keywords));
+    }
+
+    private volatile TransformerChain transformerChain;
+
+    /**
+     * The {@link #messageTransformers} compiled into the chain that's used to process log items,
+     * recompiled after the transformers have changed, which also resets its hit counters
+     */
+    public @NotNull TransformerChain getTransformerChain() {
+        TransformerChain chain = transformerChain;
+        if (chain == null) transformerChain = chain = new TransformerChain(messageTransformers);
+        return chain;
+    }
+
     /**
      * Pads logger names less than the set amount of characters with whitespace.
      * Negative values indicate left-padding, positive values indicate right-padding.
      * Default disabled.
      */
-    @Getter @Setter private int loggerNamePadding = 0;
+    @Getter private int loggerNamePadding = 0;
+
+    /**
+     * Pads logger names less than the set amount of characters with whitespace.
+     * Negative values indicate left-padding, positive values indicate right-padding.
+     * Default disabled.
+     */
+    public void setLoggerNamePadding(int loggerNamePadding) {
+        this.loggerNamePadding = loggerNamePadding;
+        invalidate();
+    }
 
     /**
      * Mappings representing a logger name prefix and associated Functions to transform those logger names.
      * Used to provide a more user-friendly name for a logger, such as translating "net.dv8tion.jda" to "JDA".
      * A logger name mapping may return {@code null} if messages from the logger should be ignored.
+     * Resolved names are cached per logger name until the mappings change; call {@link #invalidate()} if a mapping function starts returning something else.
      * <strong>Logger mappings are implemented in the default logging prefix! Changing the prefixer will require reimplementation of logger mappings!</strong>
      */
-    @Getter private final Map<Predicate<String>, Function<String, String>> loggerMappings = new LinkedHashMap<>();
+    @Getter private final Map<Predicate<String>, Function<String, String>> loggerMappings = new ObservedMap<>(this::invalidate);
 
     /**
      * Simple logger name mapper that, assuming the logger's name is a fully-qualified class name, returns the simple name
      */
     @Getter private static final Function<String, String> friendlyMapper = s -> s.substring(s.lastIndexOf(".") + 1);
 
+    /**
+     * Logger name mapper used by {@link #ignoreLoggerName(String)}
+     */
+    static final Function<String, String> IGNORE = s -> null;
+
     /**
      * See {@link #loggerMappings}. Shortcut for loggerMappings.put(prefix, v -> friendlyName).
      * <strong>Logger mappings are implemented in the default logging prefix! Changing the prefixer will require reimplementation of logger mappings!</strong>
@@ -106,13 +208,7 @@ public class HandlerConfig {
      * @param function a function that returns the name to replace the logger name with
      */
     public void mapLoggerType(Class<?> superclass, Function<String, String> function) {
-        loggerMappings.put(s -> {
-            try {
-                return superclass.isAssignableFrom(Class.forName(s));
-            } catch (Throwable ignored) {
-                return false;
-            }
-        }, function);
+        loggerMappings.put(new TypePredicate(superclass), function);
     }
     /**
      * See {@link #loggerMappings}. Shortcut for checking if logger names are assignable from the given superclass, assuming FQCNs.
@@ -158,7 +254,7 @@ public class HandlerConfig {
      * @param friendlyName the friendly name to replace the logger name with
      */
     public void mapLoggerName(String prefix, String friendlyName) {
-        loggerMappings.put(s -> s.startsWith(prefix), s -> friendlyName);
+        loggerMappings.put(new PrefixPredicate(prefix), s -> friendlyName);
     }
     /**
      * See {@link #loggerMappings}. Shortcut for loggerMappings.put(prefix, function).
@@ -181,7 +277,7 @@ public class HandlerConfig {
      * @param function the mapping function
      */
     public void mapLoggerName(String prefix, Function<String, String> function) {
-        loggerMappings.put(s -> s.startsWith(prefix), function);
+        loggerMappings.put(new PrefixPredicate(prefix), function);
     }
     /**
      * See {@link #loggerMappings}. Shortcut for loggerMappings.put(class prefix, class -> class simple name).
@@ -203,7 +299,7 @@ public class HandlerConfig {
      * @param prefix the logger name to match
      */
     public void mapLoggerNameFriendly(String prefix) {
-        loggerMappings.put(s -> s.startsWith(prefix), friendlyMapper);
+        loggerMappings.put(new PrefixPredicate(prefix), friendlyMapper);
     }
     /**
      * See {@link #loggerMappings}. Shortcut for loggerMappings.put(class prefix, class -> function(class simple name)).
@@ -226,7 +322,7 @@ public class HandlerConfig {
      * @param function the function to modify the determined friendly name
      */
     public void mapLoggerNameFriendly(String prefix, Function<String, String> function) {
-        loggerMappings.put(s -> s.startsWith(prefix), s -> function.apply(friendlyMapper.apply(s)));
+        loggerMappings.put(new PrefixPredicate(prefix), s -> function.apply(friendlyMapper.apply(s)));
     }
     /**
      * See {@link #loggerMappings}. Ignores messages from the specified logger prefix. Shortcut for loggerMappings.put(prefix, v -> null).
@@ -234,18 +330,27 @@ public class HandlerConfig {
      * @param prefix the logger name prefix to ignore
      */
     public void ignoreLoggerName(String prefix) {
-        loggerMappings.put(s -> s.startsWith(prefix), s -> null);
+        loggerMappings.put(new PrefixPredicate(prefix), IGNORE);
     }
 
     /**
      * Function to include any relevant details as a prefix to a {@link LogItem}'s content when formatting.
      * Default equates to "[LEVEL Logger] ".
      */
-    @Getter @Setter @Nullable private Function<LogItem, String> prefixer = item -> {
+    @Getter @Nullable private Function<LogItem, String> prefixer = item -> {
         String name = padLoggerName(resolveLoggerName(item.getLogger()));
         return "[" + padLevelName(item.getLevel().name()) + (name != null && !name.isEmpty() ? " " + name : "") + "] ";
     };
 
+    /**
+     * Function to include any relevant details as a prefix to a {@link LogItem}'s content when formatting.
+     * Default equates to "[LEVEL Logger] ".
+     */
+    public void setPrefixer(@Nullable Function<LogItem, String> prefixer) {
+        this.prefixer = prefixer;
+        invalidate();
+    }
+
     /**
      * Resolve the given logger name with any configured logger name mappings
      * @param name the logger name to resolve mappings for
@@ -253,6 +358,16 @@ public class HandlerConfig {
      * Otherwise, the resolved logger name if mapped, else same as input
      */
     public @Nullable String resolveLoggerName(@NotNull String name) {
+        Map<String, Optional<String>> cache = this.resolvedLoggerNames;
+        Optional<String> resolved = cache.get(name);
+        if (resolved == null) {
+            resolved = Optional.ofNullable(resolveLoggerNameUncached(name));
+            if (cache.size() >= RESOLVED_NAME_CACHE_SIZE) cache.clear();
+            cache.put(name, resolved);
+        }
+        return resolved.orElse(null);
+    }
+    private @Nullable String resolveLoggerNameUncached(@NotNull String name) {
         for (Map.Entry<Predicate<String>, Function<String, String>> entry : loggerMappings.entrySet()) {
             if (entry.getKey().test(name)) {
                 return entry.getValue().apply(name);
@@ -261,22 +376,123 @@ public class HandlerConfig {
         return name;
     }
 
+    /**
+     * Maximum amount of logger names held by the resolved logger name caches before they're cleared
+     */
+    static final int RESOLVED_NAME_CACHE_SIZE = 1024;
+
+    /**
+     * Logger names resolved by {@link #resolveLoggerName(String)}, replaced with an empty map when the mappings change.
+     * Mapping functions are therefore expected to always return the same name for the same logger.
+     */
+    private volatile Map<String, Optional<String>> resolvedLoggerNames = new ConcurrentHashMap<>();
+
+    /**
+     * Whether events of the given level from the given logger should be processed at all
+     * @param level the level of the event
+     * @param logger the name of the logger that produced the event
+     * @return false if the level isn't enabled or the logger is mapped to null
+     */
+    boolean isLoggable(@NotNull LogLevel level, @NotNull String logger) {
+        return logLevels.contains(level) && resolveLoggerName(logger) != null;
+    }
+
     /**
      * Function to include any relevant details as a suffix to a {@link LogItem}'s content when formatting.
      * Default null.
      */
-    @Getter @Setter @Nullable private Function<LogItem, String> suffixer;
+    @Getter @Nullable private Function<LogItem, String> suffixer;
+
+    /**
+     * Function to include any relevant details as a suffix to a {@link LogItem}'s content when formatting.
+     * Default null.
+     */
+    public void setSuffixer(@Nullable Function<LogItem, String> suffixer) {
+        this.suffixer = suffixer;
+        invalidate();
+    }
+
+    /**
+     * Log levels that will be processed
+     */
+    @Getter private EnumSet<LogLevel> logLevels = EnumSet.complementOf(EnumSet.of(LogLevel.DEBUG));
 
     /**
      * Log levels that will be processed
      */
-    @Getter @Setter private EnumSet<LogLevel> logLevels = EnumSet.complementOf(EnumSet.of(LogLevel.DEBUG));
+    public void setLogLevels(@NotNull EnumSet<LogLevel> logLevels) {
+        this.logLevels = logLevels;
+        refreshEventFilter();
+    }
+
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Counter that is incremented whenever a setting that affects how {@link LogItem}s are formatted changes,
+     * such as the prefixer, the suffixer, code blocks or the logger mappings.
+     * Formatted output cached on log items is only reused while the version it was formatted at is current.
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Discard formatted output cached on log items and the snapshots derived from this config.
+     * Called by the setters of this class and on changes to {@link #getLoggerMappings()}; call it manually after
+     * changing state this config can't see, such as state captured by a custom {@link #prefixer}.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        resolvedLoggerNames = new ConcurrentHashMap<>();
+        stackTraceRenderer.clearCache();
+        // a mapping may have been replaced without the map changing size, so the snapshot is always rebuilt
+        eventFilter = new EventFilter(logLevels, loggerMappings);
+    }
+
+    private volatile EventFilter eventFilter = new EventFilter(logLevels, loggerMappings);
+
+    /**
+     * Thread-safe snapshot of {@link #logLevels} and the logger names ignored with {@link #ignoreLoggerName(String)},
+     * used by logging adapters to reject events before doing any work for them.
+     * Changes made directly to {@link #getLogLevels()} are picked up on the next flush.
+     */
+    public @NotNull EventFilter getEventFilter() {
+        return eventFilter;
+    }
+
+    /**
+     * Rebuild the {@link #getEventFilter()} snapshot if the levels have been changed directly since it was built.
+     * Changes to the logger mappings rebuild it through {@link #invalidate()}.
+     */
+    void refreshEventFilter() {
+        if (!eventFilter.matches(logLevels)) {
+            eventFilter = new EventFilter(logLevels, loggerMappings);
+        }
+    }
+
+    /**
+     * If code blocks should be used. Required for {@link #setSplitCodeBlockForLinks(boolean)}, {@link #setAllowLinkEmbeds(boolean)} and {@link #setColored(boolean)}.
+     * Default true.
+     */
+    @Getter private boolean useCodeBlocks = true;
 
     /**
      * If code blocks should be used. Required for {@link #setSplitCodeBlockForLinks(boolean)}, {@link #setAllowLinkEmbeds(boolean)} and {@link #setColored(boolean)}.
      * Default true.
      */
-    @Getter @Setter private boolean useCodeBlocks = true;
+    public void setUseCodeBlocks(boolean useCodeBlocks) {
+        this.useCodeBlocks = useCodeBlocks;
+        invalidate();
+    }
+
+    /**
+     * Whether the logging handler should format log items which contain a URL to be outside the output code blocks.
+     * This is useful for if you want links to be clickable or not in the Discord client.
+     * Has the tradeoff that the log item will have no coloring/monospace font.
+     * Default false.
+     * @see #useCodeBlocks
+     */
+    private boolean splitCodeBlockForLinks = false;
 
     /**
      * Whether the logging handler should format log items which contain a URL to be outside the output code blocks.
@@ -285,7 +501,10 @@ public class HandlerConfig {
      * Default false.
      * @see #useCodeBlocks
      */
-    @Setter private boolean splitCodeBlockForLinks = false;
+    public void setSplitCodeBlockForLinks(boolean splitCodeBlockForLinks) {
+        this.splitCodeBlockForLinks = splitCodeBlockForLinks;
+        invalidate();
+    }
 
     /**
      * Whether the logging handler should format log items which contain a URL to be outside the output code blocks.
@@ -303,7 +522,17 @@ public class HandlerConfig {
      * Default true.
      * @see #useCodeBlocks
      */
-    @Setter private boolean allowLinkEmbeds = true;
+    private boolean allowLinkEmbeds = true;
+
+    /**
+     * Whether the logging handler should allow Discord to show embeds for links when {@link #splitCodeBlockForLinks} is enabled.
+     * Default true.
+     * @see #useCodeBlocks
+     */
+    public void setAllowLinkEmbeds(boolean allowLinkEmbeds) {
+        this.allowLinkEmbeds = allowLinkEmbeds;
+        invalidate();
+    }
 
     /**
      * Whether the logging handler should allow Discord to show embeds for links when {@link #splitCodeBlockForLinks} is enabled.
@@ -319,7 +548,17 @@ public class HandlerConfig {
      * Default true.
      * @see #useCodeBlocks
      */
-    @Setter private boolean colored = true;
+    private boolean colored = true;
+
+    /**
+     * Whether the logging handler should format log items with code syntax to highlight log levels in distinct colors.
+     * Default true.
+     * @see #useCodeBlocks
+     */
+    public void setColored(boolean colored) {
+        this.colored = colored;
+        invalidate();
+    }
 
     /**
      * Whether the logging handler should format log items with code syntax to highlight log levels in distinct colors.
@@ -330,12 +569,379 @@ public class HandlerConfig {
         return colored && useCodeBlocks;
     }
 
+    /**
+     * How the live message carries the log lines. {@link OutputMode#EMBEDS} packs them into the descriptions of up to
+     * {@link MessageLimits#MAX_EMBEDS} embeds, fitting three times as many lines into a message as its content does,
+     * formatted the same way.
+     * Default {@link OutputMode#CONTENT}.
+     * @see #embedPerLevel
+     */
+    @Getter @NotNull private OutputMode outputMode = OutputMode.CONTENT;
+
+    /**
+     * How the live message carries the log lines. {@link OutputMode#EMBEDS} packs them into the descriptions of up to
+     * {@link MessageLimits#MAX_EMBEDS} embeds, fitting three times as many lines into a message as its content does,
+     * formatted the same way.
+     * Default {@link OutputMode#CONTENT}.
+     * @see #embedPerLevel
+     */
+    public void setOutputMode(@NotNull OutputMode outputMode) {
+        this.outputMode = outputMode;
+        invalidate();
+    }
+
+    /**
+     * Whether consecutive log items of different levels are put in separate embeds, each colored by its level, with
+     * {@link OutputMode#EMBEDS}. Otherwise, an embed is only started when the previous one is full, and is colored by
+     * the most severe level in it.
+     * Default true.
+     */
+    @Getter private boolean embedPerLevel = true;
+
+    /**
+     * Whether consecutive log items of different levels are put in separate embeds, each colored by its level, with
+     * {@link OutputMode#EMBEDS}. Otherwise, an embed is only started when the previous one is full, and is colored by
+     * the most severe level in it.
+     * Default true.
+     */
+    public void setEmbedPerLevel(boolean embedPerLevel) {
+        this.embedPerLevel = embedPerLevel;
+        invalidate();
+    }
+
+    /**
+     * Whether messages should be stripped of all ANSI CSI sequences, such as cursor movement and erasing the line,
+     * rather than only of color codes.
+     * Default false.
+     */
+    @Getter @Setter private boolean stripControlSequences = false;
+
+    /**
+     * Renders the stack traces of {@link LogItem}s, caching the frame lines of repeated exceptions
+     */
+    @Getter private final StackTraceRenderer stackTraceRenderer = new StackTraceRenderer(this);
+
+    /**
+     * Whether stack traces should be rendered compactly: frames from {@link #elidedFramePrefixes} are collapsed,
+     * each exception in the chain lists at most {@link #compactStackTraceFrames} frames and the whole trace is limited
+     * to {@link #compactStackTraceLength} characters.
+     * Default false.
+     */
+    @Getter private boolean compactStackTraces = false;
+
+    /**
+     * Whether stack traces should be rendered compactly: frames from {@link #elidedFramePrefixes} are collapsed,
+     * each exception in the chain lists at most {@link #compactStackTraceFrames} frames and the whole trace is limited
+     * to {@link #compactStackTraceLength} characters.
+     * Default false.
+     */
+    public void setCompactStackTraces(boolean compactStackTraces) {
+        this.compactStackTraces = compactStackTraces;
+        invalidate();
+    }
+
+    /**
+     * Class name prefixes of stack frames that are collapsed into a single line in {@link #compactStackTraces compact} stack traces.
+     * Default reflection, thread pool and JDK internals.
+     */
+    @Getter @NotNull private List<String> elidedFramePrefixes = Collections.unmodifiableList(Arrays.asList(
+            "java.lang.reflect.", "jdk.internal.", "sun.reflect.", "java.util.concurrent.", "java.lang.Thread"
+    ));
+
+    /**
+     * Class name prefixes of stack frames that are collapsed into a single line in {@link #compactStackTraces compact} stack traces.
+     * Default reflection, thread pool and JDK internals.
+     */
+    public void setElidedFramePrefixes(@NotNull Collection<String> elidedFramePrefixes) {
+        this.elidedFramePrefixes = Collections.unmodifiableList(new ArrayList<>(elidedFramePrefixes));
+        invalidate();
+    }
+
+    /**
+     * Maximum amount of frames listed per exception in {@link #compactStackTraces compact} stack traces, before the rest is summarized as "... N more".
+     * Default 10.
+     */
+    @Getter private int compactStackTraceFrames = 10;
+
+    /**
+     * Maximum amount of frames listed per exception in {@link #compactStackTraces compact} stack traces, before the rest is summarized as "... N more".
+     * Default 10.
+     */
+    public void setCompactStackTraceFrames(int compactStackTraceFrames) {
+        this.compactStackTraceFrames = compactStackTraceFrames;
+        invalidate();
+    }
+
+    /**
+     * Amount of characters after which rendering a {@link #compactStackTraces compact} stack trace stops.
+     * Default 1000.
+     */
+    @Getter private int compactStackTraceLength = 1000;
+
+    /**
+     * Amount of characters after which rendering a {@link #compactStackTraces compact} stack trace stops.
+     * Default 1000.
+     */
+    public void setCompactStackTraceLength(int compactStackTraceLength) {
+        this.compactStackTraceLength = compactStackTraceLength;
+        invalidate();
+    }
+
+    /**
+     * Milliseconds within which a repeat of the same exception is counted on the item that first logged it, instead
+     * of being logged again, as long as that item is still waiting to be sent or part of the live message.
+     * The first item then shows "(\u00D7N, last at HH:mm:ss)". Every repeat extends the window. 0 disables grouping.
+     * Default 0.
+     * @see #exceptionGroupingKey
+     */
+    @Getter private long exceptionGroupingWindow = 0;
+
+    /**
+     * Milliseconds within which a repeat of the same exception is counted on the item that first logged it, instead
+     * of being logged again, as long as that item is still waiting to be sent or part of the live message.
+     * The first item then shows "(\u00D7N, last at HH:mm:ss)". Every repeat extends the window. 0 disables grouping.
+     * Default 0.
+     * @see #exceptionGroupingKey
+     */
+    public void setExceptionGroupingWindow(long exceptionGroupingWindow) {
+        this.exceptionGroupingWindow = exceptionGroupingWindow;
+        invalidate();
+    }
+
+    /**
+     * Function deciding which exceptions count as the same for {@link #exceptionGroupingWindow}, by returning equal keys.
+     * Returning {@code null} excludes an exception from grouping.
+     * Default the exception's type and its top 5 stack frames.
+     */
+    @Getter @Setter @NotNull private Function<Throwable, Object> exceptionGroupingKey = throwable -> {
+        StackTraceElement[] trace = throwable.getStackTrace();
+        List<Object> key = new ArrayList<>(6);
+        key.add(throwable.getClass());
+        key.addAll(Arrays.asList(trace).subList(0, Math.min(5, trace.length)));
+        return key;
+    };
+
+    /**
+     * Whether consecutive log items from the same logger with the same level and message are counted on the first
+     * of them instead of being logged again, as long as it's still waiting to be sent or part of the live message.
+     * The first item then shows "(\u00D7N, last at HH:mm:ss)".
+     * Default false.
+     */
+    @Getter @Setter private boolean collapseDuplicates = false;
+
+    /**
+     * Length in characters above which the stack trace of a {@link LogItem} is sent as a file attached to the message
+     * instead of inline, as are stack traces that would be cut off. The line then only shows the first line of the
+     * stack trace and the name of the file. 0 to always show stack traces inline.
+     * Default 0.
+     * @see #compressTraceAttachments
+     */
+    @Getter private int traceAttachmentThreshold = 0;
+
+    /**
+     * Length in characters above which the stack trace of a {@link LogItem} is sent as a file attached to the message
+     * instead of inline, as are stack traces that would be cut off. The line then only shows the first line of the
+     * stack trace and the name of the file. 0 to always show stack traces inline.
+     * Default 0.
+     * @see #compressTraceAttachments
+     */
+    public void setTraceAttachmentThreshold(int traceAttachmentThreshold) {
+        this.traceAttachmentThreshold = traceAttachmentThreshold;
+        invalidate();
+    }
+
+    /**
+     * Whether stack traces attached with {@link #traceAttachmentThreshold} are gzipped, as .txt.gz files.
+     * Default false.
+     */
+    @Getter private boolean compressTraceAttachments = false;
+
+    /**
+     * Whether stack traces attached with {@link #traceAttachmentThreshold} are gzipped, as .txt.gz files.
+     * Default false.
+     */
+    public void setCompressTraceAttachments(boolean compressTraceAttachments) {
+        this.compressTraceAttachments = compressTraceAttachments;
+        invalidate();
+    }
+
     /**
      * Whether the logging handler should truncate {@link LogItem}s with a formatted length longer than {@link LogItem#CLIPPING_MAX_LENGTH}.
      * Default true.
      */
-    @Getter @Setter private boolean truncateLongItems = true;
+    @Getter private boolean truncateLongItems = true;
 
+    /**
+     * Whether the logging handler should truncate {@link LogItem}s with a formatted length longer than {@link LogItem#CLIPPING_MAX_LENGTH}.
+     * Default true.
+     */
+    public void setTruncateLongItems(boolean truncateLongItems) {
+        this.truncateLongItems = truncateLongItems;
+        invalidate();
+    }
+
+    /**
+     * Maximum amount of characters logged of a single message, which is split into as many lines as needed by
+     * {@link MessageChunker}. The rest of the message is dropped, with a note saying how much. 0 for no limit other
+     * than {@link MessageChunker#MAX_CHUNKS} lines, roughly 190000 characters.
+     * All lines of a message are created as soon as it's processed and queued at once, so with a high limit a single
+     * message can take up to that many items of the queue of processed items.
+     * Default 10000.
+     */
+    @Getter @Setter private int maxMessageLength = 10_000;
+
+    /**
+     * Maximum amount of {@link LogItem}s held by the ingestion buffer, and by the queue of processed items waiting to
+     * be sent, before the {@link #overflowPolicy} is applied. Rounded up to the next power of two.
+     * Only read when the handler is constructed.
+     * Default 8192.
+     */
+    @Getter @Setter private int queueCapacity = 8192;
+
+    /**
+     * Maximum estimated amount of bytes held by the ingestion buffer before the {@link #overflowPolicy} is applied.
+     * Default 8 MiB.
+     * @see LogItem#estimateSize()
+     */
+    @Getter @Setter private long queueByteCapacity = 8 * 1024 * 1024;
+
+    /**
+     * Estimated amount of bytes of processed {@link LogItem}s waiting to be sent above which the handler stops sending
+     * them as live messages. The whole backlog is then written to a gzipped log file instead, sent as a single
+     * attachment with a summary of the amount of lines per level and logger, after which live messages resume.
+     * 0 to always send every line live.
+     * Default 0.
+     * @see LogItem#estimateSize()
+     */
+    @Getter @Setter private long backlogSpillThreshold = 0;
+
+    /**
+     * Amount of processed {@link LogItem}s waiting to be sent above which the handler is overloaded, while more lines
+     * are logged than sent. Each {@link #overloadCheckInterval} it stays overloaded, it holds back more lines below
+     * {@link LogLevel#WARN}: first those from the noisiest loggers, then a sample of the others, then all of them.
+     * Held back lines are counted per logger and sent as rollups instead. Once the backlog has drained to a tenth of
+     * this, it steps back towards sending every line. Every step is logged to the channel.
+     * 0 to never hold back lines.
+     * Default 0.
+     * @see OverloadController
+     */
+    @Getter @Setter private int overloadBacklog = 0;
+
+    /**
+     * Milliseconds between checks of whether the handler is overloaded, each of which may take one step.
+     * Default 10000.
+     */
+    @Getter @Setter private long overloadCheckInterval = 10_000;
+
+    /**
+     * Milliseconds between rollups of the lines held back while overloaded, such as
+     * "com.foo.Bar: 4,312 INFO lines in last 30 s".
+     * Default 30000.
+     */
+    @Getter @Setter private long overloadRollupInterval = 30_000;
+
+    /**
+     * While overloaded, one in this many lines below {@link LogLevel#WARN} from loggers other than the noisiest is
+     * sent at the sampling step.
+     * Default 10.
+     */
+    @Getter @Setter private int overloadSampleRate = 10;
+
+    /**
+     * What to do with incoming {@link LogItem}s when the ingestion buffer is full.
+     * Dropped items are counted and reported in the channel as a single "N lines dropped" item.
+     * Default {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    @Getter @Setter @NotNull private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * How many milliseconds a logging thread may wait for room in the ingestion buffer under {@link OverflowPolicy#BLOCK}.
+     * Default 50.
+     */
+    @Getter @Setter private long overflowBlockTimeout = 50;
+
+    /**
+     * The lowest level that may evict older items under {@link OverflowPolicy#DROP_BELOW_LEVEL}, and that can't be evicted.
+     * Default {@link LogLevel#WARN}.
+     */
+    @Getter @Setter @NotNull private LogLevel overflowMinimumLevel = LogLevel.WARN;
+
+    /**
+     * Delay in milliseconds between scheduled flushes while log items keep arriving.
+     * Used by {@link ChannelLoggingHandler#schedule()}.
+     * Default 1000.
+     */
+    @Getter @Setter private long minFlushDelay = 1000;
+
+    /**
+     * Maximum delay in milliseconds between scheduled flushes. While idle, the delay doubles from the minimum up to this.
+     * The first log item arriving after the delay has backed off pulls the next flush forward to the minimum delay again.
+     * Default 10000.
+     */
+    @Getter @Setter private long maxFlushDelay = 10_000;
+
+    /**
+     * Relative share of the lines sent from each level's lane while lines of several levels are waiting to be sent.
+     * Lines of one level are always sent in order, but with the default weights an error logged during a flood of info
+     * lines goes out in the next message instead of after the whole backlog. Levels without a weight have weight 1,
+     * equal weights for all levels send lines in about the order they were logged.
+     * Default DEBUG 1, INFO 2, WARN 8, ERROR 16.
+     * @see LaneQueue
+     */
+    @Getter private final EnumMap<LogLevel, Integer> laneWeights = defaultLaneWeights();
+
+    private static EnumMap<LogLevel, Integer> defaultLaneWeights() {
+        EnumMap<LogLevel, Integer> weights = new EnumMap<>(LogLevel.class);
+        weights.put(LogLevel.DEBUG, 1);
+        weights.put(LogLevel.INFO, 2);
+        weights.put(LogLevel.WARN, 8);
+        weights.put(LogLevel.ERROR, 16);
+        return weights;
+    }
+
+    /**
+     * Set the relative share of the lines sent from the lane of the given level
+     * @param level the level of the lane
+     * @param weight the weight of the lane, at least 1
+     * @see #getLaneWeights()
+     */
+    public void setLaneWeight(@NotNull LogLevel level, int weight) {
+        laneWeights.put(level, weight);
+    }
+
+    /**
+     * Amount of messages sent or edited per {@link #messageRateLimitWindow} that Discord allows per channel.
+     * A request that would exceed it is held back until the window resets, with new lines packed into it meanwhile,
+     * instead of being queued behind JDA's rate limiter. 0 to never hold requests back.
+     * Default 5.
+     * @see RateLimitBudget
+     */
+    @Getter @Setter private int messageRateLimit = 5;
+
+    /**
+     * Milliseconds after which the {@link #messageRateLimit} of a channel resets.
+     * Default 5000.
+     */
+    @Getter @Setter private long messageRateLimitWindow = 5000;
+
+    /**
+     * Amount of buffered log items that triggers a flush immediately, rather than waiting for the next scheduled one.
+     * Default 50.
+     */
+    @Getter @Setter private int flushLineThreshold = 50;
+
+    /**
+     * Estimated amount of buffered bytes that triggers a flush immediately, rather than waiting for the next scheduled one.
+     * Default 16 KiB.
+     * @see LogItem#estimateSize()
+     */
+    @Getter @Setter private long flushByteThreshold = 16 * 1024;
+
+    /**
+     * Whether an {@link LogLevel#ERROR} log item triggers a flush immediately, rather than waiting for the next scheduled one.
+     * Default true.
+     */
+    @Getter @Setter private boolean flushOnError = true;
 
 
 
@@ -385,4 +991,52 @@ public class HandlerConfig {
         return useCodeBlocks ? pad(levelName, LogLevel.MAX_NAME_LENGTH) : levelName;
     }
 
+    /**
+     * Logger mapping predicate matching fully-qualified class names of subclasses of the given type.
+     * Looks up the class of each distinct logger name only once.
+     */
+    static final class TypePredicate implements Predicate<String> {
+
+        private final Class<?> superclass;
+        private final Map<String, Boolean> results = new ConcurrentHashMap<>();
+
+        TypePredicate(@NotNull Class<?> superclass) {
+            this.superclass = superclass;
+        }
+
+        @Override
+        public boolean test(String s) {
+            Boolean result = results.get(s);
+            if (result == null) {
+                try {
+                    result = superclass.isAssignableFrom(Class.forName(s));
+                } catch (Throwable ignored) {
+                    result = false;
+                }
+                if (results.size() >= RESOLVED_NAME_CACHE_SIZE) results.clear();
+                results.put(s, result);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Logger mapping predicate matching logger names that start with a fixed prefix, recognized by {@link EventFilter}
+     */
+    static final class PrefixPredicate implements Predicate<String> {
+
+        @Getter private final String prefix;
+
+        PrefixPredicate(@NotNull String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean test(String s) {
+            return s.startsWith(prefix);
+        }
+
+    }
+
 }
@@ -1,18 +1,80 @@
 package me.scarsz.jdaappender;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.InterruptedIOException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public interface IChannelLoggingHandler {
 
     void enqueue(LogItem logItem);
 
+    /**
+     * Enqueue a log event without requiring a {@link LogItem} to be created for it on the calling thread.
+     * Implementations may buffer the given fields directly and only create LogItems for events that will be processed.
+     * @param logger the name of the logger that produced the event
+     * @param timestamp the time that the event was produced at
+     * @param level the level of the event
+     * @param message the raw message of the event, possibly containing ANSI escape codes
+     * @param throwable the throwable attached to the event
+     */
+    default void enqueue(@NotNull String logger, long timestamp, @NotNull LogLevel level, @Nullable String message, @Nullable Throwable throwable) {
+        enqueue(new LogItem(this, logger, timestamp, level, message != null ? LogItem.stripColors(message) : null, throwable));
+    }
+
+    /**
+     * Enqueue a log event whose message is only rendered if and when the event is processed.
+     * @param logger the name of the logger that produced the event
+     * @param timestamp the time that the event was produced at
+     * @param level the level of the event
+     * @param renderer the renderer to produce the message with
+     * @param source the unformatted message source, such as a pattern, it must not be mutated afterwards
+     * @param arguments the arguments to render the source with, the array must not be mutated afterwards
+     * @param throwable the throwable attached to the event
+     */
+    default void enqueue(@NotNull String logger, long timestamp, @NotNull LogLevel level, @NotNull DeferredMessage.Renderer renderer,
+                         @Nullable Object source, @Nullable Object[] arguments, @Nullable Throwable throwable) {
+        enqueue(new LogItem(this, logger, timestamp, level, new DeferredMessage(renderer, source, arguments), throwable));
+    }
+
+    /**
+     * Cheap check for whether an event could be processed at all, used by adapters before doing any work for it
+     * @param level the level of the event
+     * @param logger the name of the logger that produced the event
+     * @return false if the event will definitely be discarded
+     */
+    default boolean isLoggable(@NotNull LogLevel level, @Nullable String logger) {
+        return true;
+    }
+
     void flush();
 
+    /**
+     * Flush all pending log items and wait for them to be sent. Intended for shutdown.
+     * @param timeout the maximum amount of time to wait
+     * @param unit the unit that the timeout is expressed in
+     * @return true if everything was sent within the timeout
+     */
+    default boolean flushAndWait(long timeout, @NotNull TimeUnit unit) {
+        flush();
+        return true;
+    }
+
     String escapeMarkdown(String message);
 
     ScheduledFuture<?> getScheduledFuture();
 
+    /**
+     * Stop scheduling flushes. A flush that is currently running is allowed to complete, but doesn't schedule another.
+     * Flushes can still be made with {@link #flush()} and {@link #flushAndWait(long, TimeUnit)}.
+     */
+    default void stopScheduling() {
+        ScheduledFuture<?> future = getScheduledFuture();
+        if (future != null) future.cancel(false);
+    }
+
     default boolean isInterruptedException(Exception e) {
         Throwable ex = e;
         while (ex != null) {
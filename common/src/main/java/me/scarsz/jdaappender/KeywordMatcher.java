@@ -0,0 +1,199 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton matching any number of keywords in a single scan of a message.
+ * Keywords are matched literally and case-sensitively. A keyword ending in {@code *} matches the text before the
+ * {@code *}, followed by any non-whitespace characters, such as {@code "token=*"} matching the whole of
+ * {@code "token=abc123"}.
+ * Transitions for ASCII characters are precomputed into a table, so scanning ASCII text takes one lookup per character.
+ * Immutable and thread-safe.
+ * @see HandlerConfig#denyKeywords(Collection)
+ * @see HandlerConfig#redactKeywords(Collection)
+ */
+public final class KeywordMatcher {
+
+    private static final int ASCII = 128;
+
+    private final int[] table;
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final int[] literalLength;
+    private final int[] wildcardLength;
+    private final boolean[] accepting;
+
+    public KeywordMatcher(@NotNull Collection<String> keywords) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> literal = new ArrayList<>();
+        List<Integer> wildcard = new ArrayList<>();
+        children.add(new TreeMap<>());
+        literal.add(0);
+        wildcard.add(0);
+
+        for (String keyword : keywords) {
+            boolean isWildcard = keyword.length() > 1 && keyword.endsWith("*");
+            String text = isWildcard ? keyword.substring(0, keyword.length() - 1) : keyword;
+            if (text.isEmpty()) continue;
+
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                Integer next = children.get(node).get(text.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    literal.add(0);
+                    wildcard.add(0);
+                    children.get(node).put(text.charAt(i), next);
+                }
+                node = next;
+            }
+            (isWildcard ? wildcard : literal).set(node, text.length());
+        }
+
+        int size = children.size();
+        this.edgeChars = new char[size][];
+        this.edgeTargets = new int[size][];
+        this.fail = new int[size];
+        this.literalLength = new int[size];
+        this.wildcardLength = new int[size];
+        this.accepting = new boolean[size];
+        this.table = new int[size * ASCII];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> edges = children.get(node);
+            edgeChars[node] = new char[edges.size()];
+            edgeTargets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[node][i] = edge.getKey();
+                edgeTargets[node][i++] = edge.getValue();
+            }
+            literalLength[node] = literal.get(node);
+            wildcardLength[node] = wildcard.get(node);
+        }
+
+        // breadth-first, so the failure target of a node is always complete before the node itself
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                int child = edgeTargets[node][i];
+                fail[child] = node == 0 ? 0 : step(fail[node], edgeChars[node][i]);
+                // a node also completes every keyword completed by its failure target, keep the longest
+                literalLength[child] = Math.max(literalLength[child], literalLength[fail[child]]);
+                wildcardLength[child] = Math.max(wildcardLength[child], wildcardLength[fail[child]]);
+                accepting[child] = literalLength[child] != 0 || wildcardLength[child] != 0;
+                queue.add(child);
+            }
+            for (char c = 0; c < ASCII; c++) {
+                int child = child(node, c);
+                table[node * ASCII + c] = child >= 0 ? child : node == 0 ? 0 : table[fail[node] * ASCII + c];
+            }
+        }
+    }
+
+    private int child(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+
+    private int step(int node, char c) {
+        if (c < ASCII) return table[node * ASCII + c];
+        while (true) {
+            int child = child(node, c);
+            if (child >= 0) return child;
+            if (node == 0) return 0;
+            node = fail[node];
+        }
+    }
+
+    /**
+     * @return true if this matcher has no keywords, and never matches anything
+     */
+    public boolean isEmpty() {
+        return edgeChars[0].length == 0;
+    }
+
+    /**
+     * Whether the text contains any of the keywords
+     * @param text the text to scan
+     * @return true if any keyword was found
+     */
+    public boolean find(@NotNull String text) {
+        int node = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            node = step(node, text.charAt(i));
+            if (accepting[node]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replace every match of any of the keywords in the text, merging overlapping and adjacent matches
+     * @param text the text to redact
+     * @param mask the replacement for each match
+     * @return the redacted text, or the same instance if nothing matched
+     */
+    public @NotNull String redact(@NotNull String text, @NotNull String mask) {
+        long[] spans = null;
+        int spanCount = 0;
+
+        int node = 0;
+        int length = text.length();
+        int wildcardEnd = -1; // end of the furthest run of non-whitespace a wildcard has been extended through
+        for (int i = 0; i < length; i++) {
+            node = step(node, text.charAt(i));
+            if (!accepting[node]) continue;
+            int literal = literalLength[node];
+            int wildcard = wildcardLength[node];
+
+            int start = i + 1 - Math.max(literal, wildcard);
+            int end = i + 1;
+            if (wildcard != 0) {
+                if (end <= wildcardEnd) {
+                    // still inside the run scanned for an earlier match, which ends at the same whitespace
+                    end = wildcardEnd;
+                } else {
+                    while (end < length && !Character.isWhitespace(text.charAt(end))) end++;
+                    wildcardEnd = end;
+                }
+            }
+
+            if (spans == null) {
+                spans = new long[8];
+            } else if (spanCount == spans.length) {
+                spans = Arrays.copyOf(spans, spanCount * 2);
+            }
+            spans[spanCount++] = ((long) start << 32) | end;
+        }
+        if (spans == null) return text;
+
+        Arrays.sort(spans, 0, spanCount);
+        StringBuilder builder = new StringBuilder(length);
+        int copied = 0;
+        int index = 0;
+        while (index < spanCount) {
+            int start = (int) (spans[index] >>> 32);
+            int end = (int) spans[index++];
+            while (index < spanCount && (int) (spans[index] >>> 32) <= end) {
+                end = Math.max(end, (int) spans[index++]);
+            }
+            builder.append(text, copied, start).append(mask);
+            copied = end;
+        }
+        return builder.append(text, copied, length).toString();
+    }
+
+}
@@ -0,0 +1,142 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Queue of processed {@link LogItem}s waiting to be sent, with a lane per {@link LogLevel} so that a flood of one level
+ * doesn't hold back the others. Each lane is first in, first out; lanes take turns by smooth weighted round-robin
+ * according to {@link HandlerConfig#getLaneWeights()}, so that with the default weights an error waiting behind
+ * thousands of info lines is sent within the next few lines.
+ * {@link #peek()} returns the item that {@link #poll()} would, as long as nothing is added in between.
+ * Not thread-safe.
+ */
+public class LaneQueue extends AbstractQueue<LogItem> {
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final HandlerConfig config;
+    private final List<ArrayDeque<LogItem>> lanes = new ArrayList<>(LEVELS.length);
+    private final int[] credit = new int[LEVELS.length];
+    private int size = 0;
+
+    public LaneQueue(@NotNull HandlerConfig config) {
+        this.config = config;
+        for (int i = 0; i < LEVELS.length; i++) lanes.add(new ArrayDeque<>());
+    }
+
+    @Override
+    public boolean offer(@NotNull LogItem item) {
+        lanes.get(item.getLevel().ordinal()).add(item);
+        size++;
+        return true;
+    }
+
+    @Override
+    public LogItem poll() {
+        int lane = selectLane();
+        if (lane < 0) return null;
+
+        // every waiting lane earns its weight, the chosen one pays for the turn with the weight of all waiting lanes
+        int totalWeight = 0;
+        for (int i = 0; i < lanes.size(); i++) {
+            if (lanes.get(i).isEmpty()) continue;
+            int weight = getWeight(i);
+            credit[i] += weight;
+            totalWeight += weight;
+        }
+        credit[lane] -= totalWeight;
+
+        LogItem item = lanes.get(lane).poll();
+        if (lanes.get(lane).isEmpty()) credit[lane] = 0; // an idle lane doesn't bank turns
+        size--;
+        return item;
+    }
+
+    @Override
+    public LogItem peek() {
+        int lane = selectLane();
+        return lane >= 0 ? lanes.get(lane).peek() : null;
+    }
+
+    /**
+     * @return the lane with the most credit after this turn's weights, ties going to the more severe level, -1 if empty
+     */
+    private int selectLane() {
+        int selected = -1;
+        int selectedCredit = Integer.MIN_VALUE;
+        for (int i = lanes.size() - 1; i >= 0; i--) {
+            if (lanes.get(i).isEmpty()) continue;
+            int laneCredit = credit[i] + getWeight(i);
+            if (laneCredit > selectedCredit) {
+                selected = i;
+                selectedCredit = laneCredit;
+            }
+        }
+        return selected;
+    }
+
+    private int getWeight(int lane) {
+        Integer weight = config.getLaneWeights().get(LEVELS[lane]);
+        return weight != null ? Math.max(1, weight) : 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (ArrayDeque<LogItem> lane : lanes) lane.clear();
+        Arrays.fill(credit, 0);
+        size = 0;
+    }
+
+    /**
+     * @return an iterator over the items lane by lane, from the least to the most severe level, rather than in the
+     *         order they'd be polled in
+     */
+    @Override
+    public @NotNull Iterator<LogItem> iterator() {
+        return new Iterator<LogItem>() {
+            private int lane = 0;
+            private Iterator<LogItem> current = lanes.get(0).iterator();
+            private Iterator<LogItem> last;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && lane < lanes.size() - 1) current = lanes.get(++lane).iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public LogItem next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                last = current;
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) throw new IllegalStateException();
+                last.remove();
+                last = null;
+                size--;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,74 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds links in log messages. Text without "http" in it, which is nearly all of it, is rejected with a plain
+ * {@link String#indexOf(String)} before {@link #URL_PATTERN} is used.
+ */
+public final class LinkDetector {
+
+    /**
+     * RegEx pattern used to check if a URL contains a link for use with {@link HandlerConfig#isSplitCodeBlockForLinks()}.
+     * Group 1 is the link without its scheme.
+     */
+    public static final Pattern URL_PATTERN = Pattern.compile("https?:\\/\\/((?:[a-zA-Z0-9](?:[a-zA-Z0-9-]{0,61}[a-zA-Z0-9])?\\.)+[a-zA-Z0-9][a-zA-Z0-9-]{0,61}[a-zA-Z0-9]:?\\d*\\/?[a-zA-Z0-9_\\/\\-#.]*\\??[a-zA-Z0-9\\-_~:\\/?#\\[\\]@!$&'()*+,;=%.]*)");
+
+    static final int[] NONE = new int[0];
+
+    private LinkDetector() {}
+
+    /**
+     * @param text the text to search
+     * @return whether the text contains a link
+     */
+    public static boolean containsLink(@NotNull String text) {
+        int index = text.indexOf("http");
+        return index >= 0 && URL_PATTERN.matcher(text).find(index);
+    }
+
+    /**
+     * Find the schemes of all links in the text
+     * @param text the text to search
+     * @return pairs of offsets, the start of a link followed by the end of its scheme ("https://")
+     */
+    public static int[] findLinks(@NotNull String text) {
+        int index = text.indexOf("http");
+        if (index < 0) return NONE;
+
+        Matcher matcher = URL_PATTERN.matcher(text);
+        if (!matcher.find(index)) return NONE;
+
+        int[] links = new int[2];
+        int count = 0;
+        do {
+            if (count == links.length) links = Arrays.copyOf(links, count * 2);
+            links[count++] = matcher.start();
+            links[count++] = matcher.start(1);
+        } while (matcher.find());
+        return count == links.length ? links : Arrays.copyOf(links, count);
+    }
+
+    /**
+     * Remove the schemes of the given links from the text, so that Discord doesn't recognize them as links
+     * @param text the text to remove link schemes from
+     * @param links the links as returned by {@link #findLinks(String)}
+     * @return the text without link schemes, the same instance if there are no links
+     */
+    public static @NotNull String removeSchemes(@NotNull String text, int[] links) {
+        if (links.length == 0) return text;
+
+        StringBuilder builder = new StringBuilder(text.length());
+        int copied = 0;
+        for (int i = 0; i < links.length; i += 2) {
+            builder.append(text, copied, links[i]);
+            copied = links[i + 1];
+        }
+        return builder.append(text, copied, text.length()).toString();
+    }
+
+}
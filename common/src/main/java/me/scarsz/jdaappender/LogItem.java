@@ -2,17 +2,14 @@ package me.scarsz.jdaappender;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * Represents a loggable message from the application
@@ -22,115 +19,310 @@ public class LogItem {
 
     public static final int CLIPPING_MAX_LENGTH = 2000 - 20;
 
+    /**
+     * Room reserved in the formatted line of items that can be grouped by {@link HandlerConfig#getExceptionGroupingWindow()},
+     * enough for the longest possible repeat counter
+     */
+    static final int REPEAT_COUNTER_LENGTH = " (\u00D7".length() + 10 + ", last at 00:00:00)".length();
+    private static final DateTimeFormatter REPEAT_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneOffset.UTC);
+
     private final IChannelLoggingHandler handler;
     private final String logger;
     private final long timestamp;
     private final LogLevel level;
-    @Setter(AccessLevel.PACKAGE) @Nullable private String message;
+    @Nullable private String message;
+    @Getter(AccessLevel.NONE) @Nullable private DeferredMessage deferredMessage;
+    @Getter(AccessLevel.NONE) private boolean stripControlSequences;
     @Nullable private final Throwable throwable;
+    @Getter(AccessLevel.NONE) @Nullable private String formatted;
+    @Getter(AccessLevel.NONE) @Nullable private HandlerConfig formattedConfig;
+    @Getter(AccessLevel.NONE) private int formattedVersion;
+    @Getter(AccessLevel.NONE) @Nullable private String linksFoundIn;
+    @Getter(AccessLevel.NONE) private int[] links;
+    @Getter(AccessLevel.NONE) @Nullable private String linkCheckedMessage;
+    @Getter(AccessLevel.NONE) private boolean containsLink;
+    @Getter(AccessLevel.NONE) private int formattedCounterLength;
+    @Getter(AccessLevel.NONE) @Nullable private TraceAttachment traceAttachment;
+
+    /**
+     * How many times this item has been repeated after it while it was still in the live message,
+     * either by its exception or as a consecutive duplicate
+     */
+    private int repeats;
+    /**
+     * Timestamp of the last repeat, or the timestamp of this item if it hasn't been repeated
+     */
+    private long lastOccurrence;
 
     public LogItem(IChannelLoggingHandler handler, String logger, LogLevel level, String message) {
         this(handler, logger, System.currentTimeMillis(), level, message, null);
     }
     public LogItem(IChannelLoggingHandler handler, String logger, long timestamp, LogLevel level, @Nullable String message, @Nullable Throwable throwable) {
         this.handler = handler;
-        this.logger = logger;
+        this.logger = logger != null ? logger : ""; // anonymous loggers, such as JUL's, have no name
         this.timestamp = timestamp;
         this.level = level;
         this.message = message;
         this.throwable = throwable;
+        this.lastOccurrence = timestamp;
+    }
+    public LogItem(IChannelLoggingHandler handler, String logger, long timestamp, LogLevel level, @NotNull DeferredMessage message, @Nullable Throwable throwable) {
+        this(handler, logger, timestamp, level, message, throwable, false);
+    }
+    LogItem(IChannelLoggingHandler handler, String logger, long timestamp, LogLevel level, @NotNull DeferredMessage message, @Nullable Throwable throwable, boolean stripControlSequences) {
+        this(handler, logger, timestamp, level, (String) null, throwable);
+        this.deferredMessage = message;
+        this.stripControlSequences = stripControlSequences;
     }
 
     /**
-     * Format the log item's content to a usable {@link String}
+     * Get the message of this log item, rendering it first if it was deferred
+     * @return the message, without ANSI escape codes
+     */
+    public @Nullable String getMessage() {
+        if (deferredMessage != null) {
+            String rendered = deferredMessage.render();
+            message = rendered != null ? stripColors(rendered, stripControlSequences) : null;
+            deferredMessage = null;
+        }
+        return message;
+    }
+
+    void setMessage(@Nullable String message) {
+        this.message = message;
+        this.deferredMessage = null;
+        this.formatted = null;
+    }
+
+    /**
+     * Format the log item's content to a usable {@link String}.
+     * The result is cached until the message or the config's {@link HandlerConfig#getVersion() version} changes.
      * @param config the appender config
      * @return the human-readable, formatted line representing this LogItem
      */
     protected String format(@NotNull HandlerConfig config) {
+        int version = config.getVersion();
+        if (formatted == null || formattedConfig != config || formattedVersion != version) {
+            formatted = formatUncached(config);
+            formattedConfig = config;
+            formattedVersion = version;
+        }
+        return formatted;
+    }
+
+    /**
+     * The complete stack trace of this item as a file, if it's attached to the message instead of being shown inline
+     * @param config the appender config
+     * @return the attachment, null if the stack trace is inline or there is none
+     * @see HandlerConfig#getTraceAttachmentThreshold()
+     */
+    public @Nullable TraceAttachment getTraceAttachment(@NotNull HandlerConfig config) {
+        format(config);
+        return traceAttachment;
+    }
+
+    /**
+     * Whether the message of this item contains a link, checked once per message
+     * @return true if the message contains a link
+     */
+    public boolean hasLink() {
+        String message = getMessage();
+        if (message == null) return false;
+        if (message != linkCheckedMessage) {
+            containsLink = LinkDetector.containsLink(message);
+            linkCheckedMessage = message;
+        }
+        return containsLink;
+    }
+
+    /**
+     * The links in the {@link #format(HandlerConfig) formatted} line, found once per formatted line
+     * @param config the appender config
+     * @return the links as returned by {@link LinkDetector#findLinks(String)}
+     */
+    int[] getFormattedLinks(@NotNull HandlerConfig config) {
+        String formatted = format(config);
+        if (formatted != linksFoundIn) {
+            links = LinkDetector.findLinks(formatted);
+            linksFoundIn = formatted;
+        }
+        return links;
+    }
+
+    /**
+     * Count a repeat of this item, shown in the formatted line as "(\u00D7N, last at HH:mm:ss)"
+     * @param timestamp the timestamp of the repeat
+     * @return the previous {@link #getLastOccurrence()}, for {@link #removeRepeat(long)}
+     */
+    long addRepeat(long timestamp) {
+        long previousOccurrence = lastOccurrence;
+        repeats++;
+        lastOccurrence = Math.max(lastOccurrence, timestamp);
+        formatted = null;
+        return previousOccurrence;
+    }
+
+    /**
+     * Undo the last {@link #addRepeat(long)}
+     * @param previousOccurrence the value returned by it
+     */
+    void removeRepeat(long previousOccurrence) {
+        repeats--;
+        lastOccurrence = previousOccurrence;
+        formatted = null;
+    }
+
+    /**
+     * Whether the given item, logged right after this one, is a duplicate of it: the same logger, level and message,
+     * without an exception
+     * @param other the item logged after this one
+     * @return true if the item is a duplicate of this one
+     */
+    boolean isDuplicate(@NotNull LogItem other) {
+        if (throwable != null || other.throwable != null || level != other.level || !Objects.equals(logger, other.logger)) return false;
+        String message = getMessage();
+        String otherMessage = other.getMessage();
+        if (message == null || otherMessage == null) return false;
+        return message.hashCode() == otherMessage.hashCode() && message.equals(otherMessage);
+    }
+
+    private String formatUncached(@NotNull HandlerConfig config) {
         StringBuilder builder = new StringBuilder();
+        boolean groupable = throwable != null && config.getExceptionGroupingWindow() > 0;
+        int limit = groupable ? CLIPPING_MAX_LENGTH - REPEAT_COUNTER_LENGTH : CLIPPING_MAX_LENGTH;
 
-        if (config.getPrefixer() != null) builder.append(config.getPrefixer().apply(this));
+        String message = getMessage();
+        appendExtension(builder, config.getPrefixer());
         if (message != null) builder.append(config.isUseCodeBlocks() ? message.replace("```", "`\u200B`\u200B`\u200B") : handler.escapeMarkdown(message));
-        if (config.getSuffixer() != null) builder.append(config.getSuffixer().apply(this));
+        appendExtension(builder, config.getSuffixer());
+        int firstLineEnd = builder.length();
         if (throwable != null) {
-            try (StringWriter stringWriter = new StringWriter()) {
-                try (PrintWriter printWriter = new PrintWriter(stringWriter)) {
-                    throwable.printStackTrace(printWriter);
-
-                    builder.append('\n');
-                    builder.append(stringWriter);
-                }
-            } catch (IOException ignored) {} // not possible
+            builder.append('\n');
+            int traceStart = builder.length();
+            config.getStackTraceRenderer().render(builder, throwable, limit);
+
+            int threshold = config.getTraceAttachmentThreshold();
+            if (threshold > 0 && (builder.length() - traceStart > threshold || builder.length() > limit)) {
+                // only the first line stays inline, referencing the file with the complete trace
+                traceAttachment = traceAttachment != null
+                        ? traceAttachment.withCompression(config.isCompressTraceAttachments())
+                        : new TraceAttachment(StackTraceRenderer.print(throwable), config.isCompressTraceAttachments());
+                String header = String.valueOf(throwable);
+                int headerEnd = header.indexOf('\n');
+                builder.setLength(traceStart);
+                builder.append(header, 0, headerEnd >= 0 ? headerEnd : header.length())
+                        .append(" (stack trace in ").append(traceAttachment.getFileName()).append(')');
+            } else {
+                traceAttachment = null;
+            }
+        }
+        if (builder.length() > limit) truncate(builder, limit);
+
+        formattedCounterLength = 0;
+        if (repeats > 0) {
+            String counter = " (\u00D7" + (repeats + 1) + ", last at " + REPEAT_TIME_FORMAT.format(Instant.ofEpochMilli(lastOccurrence)) + ")";
+            builder.insert(Math.min(firstLineEnd, builder.length()), counter);
+            formattedCounterLength = counter.length();
+            if (builder.length() > CLIPPING_MAX_LENGTH) truncate(builder, CLIPPING_MAX_LENGTH);
         }
 
-        String s = builder.toString();
-        return s.length() > CLIPPING_MAX_LENGTH ? s.substring(0, CLIPPING_MAX_LENGTH) : s;
+        return builder.toString();
     }
 
     /**
-     * Clip the log item's message content if it exceeds {@link LogItem#CLIPPING_MAX_LENGTH}
-     * @param config the appender config
-     * @return a new {@link LogItem} containing excess characters from this LogItem,
-     *         null if no clipping was performed
+     * Cut the builder down to the given length, or one character less rather than splitting a surrogate pair
      */
-    protected LogItem clip(@NotNull HandlerConfig config) {
-        Iterator<LogItem> clip = clip(config, 1).iterator();
-        return clip.hasNext() ? clip.next() : null;
+    private static void truncate(StringBuilder builder, int length) {
+        builder.setLength(Character.isHighSurrogate(builder.charAt(length - 1)) ? length - 1 : length);
     }
-    /**
-     * Clip the log item's message content into a maximum of specified number of log items, if it exceeds
-     * {@link LogItem#CLIPPING_MAX_LENGTH}
-     * @param config the appender config
-     * @param max the maximum amount of {@link LogItem}s to clip from this message
-     * @return a set containing {@link LogItem}s formed from excess characters in this LogItem,
-     *         empty set if no clipping was performed
-     */
-    protected Set<LogItem> clip(@NotNull HandlerConfig config, int max) {
-        Set<LogItem> items = new LinkedHashSet<>();
-
-        LogItem bottom = this;
-        int formattingLength = config.getFormattingLength(bottom);
-        int i = 0;
-        while (message != null && !message.isEmpty() && i < max && message.length() + formattingLength >= CLIPPING_MAX_LENGTH) {
-            formattingLength = config.getFormattingLength(bottom);
-            int cutoff = CLIPPING_MAX_LENGTH - formattingLength;
-            int pulledCharacterCount = Math.min(cutoff, bottom.message.length());
-
-            String remaining = substring(bottom.message, pulledCharacterCount);
-            bottom.message = substring(bottom.message, 0, pulledCharacterCount);
-
-            if (remaining == null || remaining.isEmpty()) break;
-            if (++i == max) break;
-
-            bottom = clone(remaining);
-            if (bottom.message == null) return items;
-            items.add(bottom);
-        }
 
-        return items;
+    private void appendExtension(StringBuilder builder, @Nullable Function<LogItem, String> extension) {
+        if (extension instanceof ExtensionFormatter) {
+            ((ExtensionFormatter) extension).appendTo(builder, this);
+        } else if (extension != null) {
+            builder.append(extension.apply(this));
+        }
     }
 
     /**
      * strip ANSI escape codes
      */
-    private static final Pattern colorPattern = Pattern.compile("\u001B\\[[\\d;]*m");
     public static String stripColors(@NotNull String str) {
-        return colorPattern.matcher(str).replaceAll("");
+        return stripColors(str, false);
     }
+    /**
+     * Strip ANSI color codes (SGR sequences), and optionally all other CSI sequences such as cursor movement and
+     * erasing, in a single pass. Incomplete sequences are left in place.
+     * @param str the string to strip
+     * @param allSequences whether to strip all CSI sequences rather than only the color codes
+     * @return the stripped string, or the same instance if it doesn't contain an escape character
+     */
+    public static String stripColors(@NotNull String str, boolean allSequences) {
+        int escape = str.indexOf('\u001B');
+        if (escape < 0) return str;
 
-    private @Nullable String substring(String str, int start) {
-        return substring(str, start, str.length());
+        int length = str.length();
+        StringBuilder builder = null;
+        int copied = 0;
+        while (escape >= 0) {
+            int end = controlSequenceEnd(str, escape, length, allSequences);
+            if (end > 0) {
+                if (builder == null) builder = new StringBuilder(length);
+                builder.append(str, copied, escape);
+                copied = end;
+            }
+            escape = str.indexOf('\u001B', end > 0 ? end : escape + 1);
+        }
+        return builder != null ? builder.append(str, copied, length).toString() : str;
     }
-    private static @Nullable String substring(String str, int start, int end) {
-        if (str == null) return null;
-        if (end < 0) end += str.length();
-        if (start < 0) start = 0;
-        if (end > str.length()) end = str.length();
-        return start > end ? "" : str.substring(start, end);
+
+    /**
+     * @return the index after the control sequence starting at the given escape character, -1 if it shouldn't be stripped
+     */
+    private static int controlSequenceEnd(String str, int escape, int length, boolean allSequences) {
+        int i = escape + 1;
+        if (i >= length || str.charAt(i) != '[') return -1;
+        i++;
+
+        if (!allSequences) {
+            // SGR: digits and semicolons terminated by 'm'
+            while (i < length) {
+                char c = str.charAt(i++);
+                if (c == 'm') return i;
+                if ((c < '0' || c > '9') && c != ';') return -1;
+            }
+            return -1;
+        }
+
+        // CSI: parameter bytes, then intermediate bytes, then a final byte
+        while (i < length && str.charAt(i) >= 0x30 && str.charAt(i) <= 0x3F) i++;
+        while (i < length && str.charAt(i) >= 0x20 && str.charAt(i) <= 0x2F) i++;
+        return i < length && str.charAt(i) >= 0x40 && str.charAt(i) <= 0x7E ? i + 1 : -1;
     }
 
+    /**
+     * The length of the {@link #format(HandlerConfig) formatted} line, including the room reserved for a repeat
+     * counter if this item can be grouped, so that it doesn't change when the counter does
+     * @param config the appender config
+     * @return the length of the formatted line
+     */
     public int getFormattedLength(HandlerConfig config) {
-        return format(config).length();
+        int length = format(config).length();
+        if (throwable != null && config.getExceptionGroupingWindow() > 0) length += REPEAT_COUNTER_LENGTH - formattedCounterLength;
+        return length;
+    }
+
+    /**
+     * Rough estimate of the heap retained by this item, used to bound the ingestion buffer
+     * @return estimated size in bytes
+     */
+    public int estimateSize() {
+        return deferredMessage != null
+                ? estimateSize(null, throwable) + DeferredMessage.estimateSize(null, null)
+                : estimateSize(message, throwable);
+    }
+    static int estimateSize(@Nullable String message, @Nullable Throwable throwable) {
+        return 64 + (message != null ? message.length() * 2 : 0) + (throwable != null ? 1024 : 0);
     }
 
     public LogItem clone(String message) {
@@ -142,7 +334,9 @@ public class LogItem {
         return "LogItem{" +
                 "logger='" + logger + '\'' +
                 ", level=" + level +
-                (message != null
+                (deferredMessage != null
+                        ? ", message=(deferred)"
+                        : message != null
                         ? ", message[" + message.length() + "]='" + (message.length() <= 100 ? message : message.substring(0, 100)) + '\''
                         : ", message[]=\"null"
                 ) +
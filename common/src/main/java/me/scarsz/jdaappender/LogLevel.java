@@ -6,17 +6,22 @@ import java.util.Arrays;
 
 public enum LogLevel {
 
-    DEBUG("#"),
-    INFO(" "),
-    WARN("!"),
-    ERROR("-");
+    DEBUG("#", 0x95A5A6),
+    INFO(" ", 0x3498DB),
+    WARN("!", 0xF1C40F),
+    ERROR("-", 0xE74C3C);
 
     public static final int MAX_NAME_LENGTH = Arrays.stream(values()).map(Enum::name).mapToInt(String::length).max().orElse(5);
 
     @Getter private final String levelSymbol;
+    /**
+     * RGB color of embeds of this level in {@link OutputMode#EMBEDS}
+     */
+    @Getter private final int color;
 
-    LogLevel(String levelSymbol) {
+    LogLevel(String levelSymbol, int color) {
         this.levelSymbol = levelSymbol;
+        this.color = color;
     }
 
 }
@@ -0,0 +1,303 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, preallocated ring buffer handing log events from logging threads to the flushing thread without locks.
+ * The buffer is bounded both in item count ({@link HandlerConfig#getQueueCapacity()}, fixed at construction) and in
+ * estimated bytes ({@link HandlerConfig#getQueueByteCapacity()}); what happens when either bound is hit is decided by
+ * {@link HandlerConfig#getOverflowPolicy()}.
+ * Events are copied field by field into reusable slots, so offering one allocates nothing; {@link LogItem}s are only
+ * built by {@link #poll(IChannelLoggingHandler)} for events that the config would actually process.
+ * Any number of threads may offer events. Polling is meant for the single flushing thread, but is safe to call
+ * concurrently, which is what lets producers evict the oldest events under {@link OverflowPolicy#DROP_OLDEST}.
+ */
+public class LogRingBuffer {
+
+    private final HandlerConfig config;
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LogRingBuffer(@NotNull HandlerConfig config) {
+        this.config = config;
+
+        int capacity = 1;
+        while (capacity < Math.max(2, config.getQueueCapacity())) capacity <<= 1;
+        this.mask = capacity - 1;
+        this.slots = new Slot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add the given item to the buffer, applying the configured {@link OverflowPolicy} if the buffer is full
+     * @param item the item to add
+     * @return true if the item was buffered, false if it was dropped
+     */
+    public boolean offer(@NotNull LogItem item) {
+        int size = item.estimateSize();
+        long position = claim(item.getLevel(), size);
+        if (position < 0) return false;
+
+        Slot slot = slots[(int) position & mask];
+        slot.item = item;
+        slot.level = item.getLevel();
+        slot.size = size;
+        publish(position);
+        return true;
+    }
+
+    /**
+     * Copy the given event into the buffer without allocating, applying the configured {@link OverflowPolicy} if the buffer is full
+     * @param logger the name of the logger that produced the event
+     * @param timestamp the time that the event was produced at
+     * @param level the level of the event
+     * @param message the raw message of the event, ANSI escape codes are stripped when the event is polled
+     * @param throwable the throwable attached to the event
+     * @return true if the event was buffered, false if it was dropped
+     */
+    public boolean offer(@NotNull String logger, long timestamp, @NotNull LogLevel level, @Nullable String message, @Nullable Throwable throwable) {
+        int size = LogItem.estimateSize(message, throwable);
+        long position = claim(level, size);
+        if (position < 0) return false;
+
+        Slot slot = slots[(int) position & mask];
+        slot.logger = logger != null ? logger : ""; // anonymous loggers, such as JUL's, have no name
+        slot.timestamp = timestamp;
+        slot.level = level;
+        slot.message = message;
+        slot.throwable = throwable;
+        slot.size = size;
+        publish(position);
+        return true;
+    }
+
+    /**
+     * Copy the given event into the buffer without allocating or rendering its message, applying the configured
+     * {@link OverflowPolicy} if the buffer is full
+     * @param logger the name of the logger that produced the event
+     * @param timestamp the time that the event was produced at
+     * @param level the level of the event
+     * @param renderer the renderer to produce the message with, once the event is known to be processed
+     * @param source the unformatted message source, such as a pattern, it must not be mutated afterwards
+     * @param arguments the arguments to render the source with, the array must not be mutated afterwards
+     * @param throwable the throwable attached to the event
+     * @return true if the event was buffered, false if it was dropped
+     */
+    public boolean offer(@NotNull String logger, long timestamp, @NotNull LogLevel level, @NotNull DeferredMessage.Renderer renderer,
+                         @Nullable Object source, @Nullable Object[] arguments, @Nullable Throwable throwable) {
+        int size = LogItem.estimateSize(null, throwable) + DeferredMessage.estimateSize(source, arguments);
+        long position = claim(level, size);
+        if (position < 0) return false;
+
+        Slot slot = slots[(int) position & mask];
+        slot.logger = logger != null ? logger : ""; // anonymous loggers, such as JUL's, have no name
+        slot.timestamp = timestamp;
+        slot.level = level;
+        slot.renderer = renderer;
+        slot.source = source;
+        slot.arguments = arguments;
+        slot.throwable = throwable;
+        slot.size = size;
+        publish(position);
+        return true;
+    }
+
+    /**
+     * Claim a slot for an event of the given level and size, applying the configured {@link OverflowPolicy} if needed
+     * @return the claimed position, -1 if the event has to be dropped
+     */
+    private long claim(LogLevel level, int size) {
+        long position = tryClaim(size);
+        if (position >= 0) return position;
+
+        OverflowPolicy policy = config.getOverflowPolicy();
+        if (policy == OverflowPolicy.BLOCK) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getOverflowBlockTimeout());
+            while (System.nanoTime() - deadline < 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                if ((position = tryClaim(size)) >= 0) return position;
+            }
+        } else if (policy == OverflowPolicy.DROP_OLDEST || (policy == OverflowPolicy.DROP_BELOW_LEVEL
+                && level.compareTo(config.getOverflowMinimumLevel()) >= 0)) {
+            // under DROP_BELOW_LEVEL, only events below the minimum level are evicted to make room
+            LogLevel evictBelow = policy == OverflowPolicy.DROP_BELOW_LEVEL ? config.getOverflowMinimumLevel() : null;
+            for (int i = 0; i <= mask; i++) {
+                boolean discarded = discard(evictBelow);
+                if (discarded) dropped.incrementAndGet();
+                if ((position = tryClaim(size)) >= 0) return position;
+                if (!discarded && evictBelow != null) break;
+            }
+        }
+
+        dropped.incrementAndGet();
+        return -1;
+    }
+
+    private long tryClaim(int size) {
+        if (!reserveBytes(size)) return -1;
+
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) return position;
+            } else if (difference < 0) {
+                // slot hasn't been consumed since the last lap, buffer is full
+                bytes.addAndGet(-size);
+                return -1;
+            }
+            position = tail.get();
+        }
+    }
+
+    private void publish(long position) {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    private boolean reserveBytes(int size) {
+        long limit = config.getQueueByteCapacity();
+        while (true) {
+            long current = bytes.get();
+            // always admit an item into an empty buffer, even if it alone exceeds the limit
+            if (current > 0 && current + size > limit) return false;
+            if (bytes.compareAndSet(current, current + size)) return true;
+        }
+    }
+
+    /**
+     * Take the oldest events from the buffer until one is found that the config would process
+     * @param handler the handler to create the {@link LogItem} for
+     * @return the oldest processable event as a LogItem, null if the buffer is empty
+     */
+    public @Nullable LogItem poll(@NotNull IChannelLoggingHandler handler) {
+        while (true) {
+            long position = take(null);
+            if (position < 0) return null;
+
+            int index = (int) position & mask;
+            Slot slot = slots[index];
+            LogItem item = slot.item;
+            try {
+                if (item == null && config.isLoggable(slot.level, slot.logger)) {
+                    boolean stripAll = config.isStripControlSequences();
+                    item = slot.renderer != null
+                            ? new LogItem(handler, slot.logger, slot.timestamp, slot.level, new DeferredMessage(slot.renderer, slot.source, slot.arguments), slot.throwable, stripAll)
+                            : new LogItem(handler, slot.logger, slot.timestamp, slot.level, slot.message != null ? LogItem.stripColors(slot.message, stripAll) : null, slot.throwable);
+                }
+            } finally {
+                // a slot that's never released would make the buffer reject every event after one more lap
+                release(position, slot);
+            }
+            if (item != null) return item;
+        }
+    }
+
+    /**
+     * Take the oldest event from the buffer and throw it away
+     * @param below the level the event has to be below to be discarded, null to discard it whatever its level
+     * @return true if an event was discarded, false if the buffer was empty or the oldest event wasn't below the level
+     */
+    private boolean discard(@Nullable LogLevel below) {
+        long position = take(below);
+        if (position < 0) return false;
+        release(position, slots[(int) position & mask]);
+        return true;
+    }
+
+    /**
+     * Take the oldest event from the buffer
+     * @param below the level the event has to be below to be taken, null to take it whatever its level
+     * @return the position of the event, -1 if the buffer was empty or the oldest event wasn't below the level
+     */
+    private long take(@Nullable LogLevel below) {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                // the slot is published and can't be reused before head moves past it, so its level is stable until the CAS
+                if (below != null && slots[index].level.compareTo(below) >= 0) return -1;
+                if (head.compareAndSet(position, position + 1)) return position;
+            } else if (difference < 0) {
+                // slot hasn't been published yet, buffer is empty
+                return -1;
+            }
+            position = head.get();
+        }
+    }
+
+    private void release(long position, Slot slot) {
+        int size = slot.size;
+        slot.item = null;
+        slot.logger = null;
+        slot.message = null;
+        slot.renderer = null;
+        slot.source = null;
+        slot.arguments = null;
+        slot.throwable = null;
+        sequences.lazySet((int) position & mask, position + mask + 1);
+        bytes.addAndGet(-size);
+    }
+
+    /**
+     * @return the approximate amount of items currently buffered
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return the estimated amount of bytes currently buffered
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the total item capacity of this buffer
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get and reset the amount of items dropped since the last call
+     * @return amount of items dropped due to the buffer being full
+     */
+    public long drainDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    /**
+     * Reusable holder for a single buffered event
+     */
+    private static final class Slot {
+        private LogItem item;
+        private String logger;
+        private long timestamp;
+        private LogLevel level;
+        private String message;
+        private DeferredMessage.Renderer renderer;
+        private Object source;
+        private Object[] arguments;
+        private Throwable throwable;
+        private int size;
+    }
+
+}
@@ -0,0 +1,314 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@link LogItem}s making up the message currently being written to, along with a running total of their
+ * formatted length so that checking whether another item fits doesn't require formatting the whole stack again.
+ * With {@link OutputMode#EMBEDS}, the items are also packed into embeds as they're added, each with its own total.
+ * Items added or removed through the {@link Set} methods are accounted for the same way.
+ */
+public class LogStack extends AbstractSet<LogItem> {
+
+    private final HandlerConfig config;
+    private final Set<LogItem> items = new LinkedHashSet<>();
+    private final List<Embed> embeds = new ArrayList<>();
+    private int formattedLength = 0;
+    private int attachments = 0;
+    private int version;
+
+    public LogStack(@NotNull HandlerConfig config) {
+        this.config = config;
+        this.version = config.getVersion();
+    }
+
+    /**
+     * Add an item to the stack
+     * @param item the item to add
+     * @param formattedLength the length of the item formatted with {@link LogItem#format(HandlerConfig)}
+     */
+    public void add(@NotNull LogItem item, int formattedLength) {
+        if (!items.add(item)) return;
+        this.formattedLength += formattedLength;
+        if (item.getTraceAttachment(config) != null) attachments++;
+        if (config.getOutputMode() == OutputMode.EMBEDS) addToEmbed(item, formattedLength);
+    }
+
+    /**
+     * Add an item to the stack, formatting it to account for its length
+     * @param item the item to add
+     * @return true if the item wasn't in the stack yet
+     */
+    @Override
+    public boolean add(@NotNull LogItem item) {
+        if (items.contains(item)) return false;
+        add(item, item.getFormattedLength(config));
+        return true;
+    }
+
+    /**
+     * Whether an item of the given formatted length fits in this stack without the rendered message exceeding the limit
+     * @param formattedLength the length of the item formatted with {@link LogItem#format(HandlerConfig)}
+     * @param limit the maximum length of the rendered message
+     * @return true if the item fits
+     */
+    public boolean canFit(int formattedLength, int limit) {
+        if (version != config.getVersion()) recalculate();
+        return getRenderedLength() + formattedLength + 5 <= limit;
+    }
+
+    /**
+     * Whether the item fits in this stack without the message exceeding Discord's limits for the
+     * {@link HandlerConfig#getOutputMode() output mode}, and its number of attachments
+     * @param item the item to check
+     * @param formattedLength the length of the item formatted with {@link LogItem#format(HandlerConfig)}
+     * @return true if the item fits
+     */
+    public boolean canFit(@NotNull LogItem item, int formattedLength) {
+        if (version != config.getVersion()) recalculate();
+        if (attachments >= MessageLimits.MAX_ATTACHMENTS && item.getTraceAttachment(config) != null) return false;
+        if (config.getOutputMode() != OutputMode.EMBEDS) return canFit(formattedLength, MessageLimits.MAX_CONTENT_LENGTH);
+        return placeInEmbed(item, formattedLength) != Placement.NONE;
+    }
+
+    /**
+     * Account for an item in this stack whose formatted length has changed, if the stack still fits afterwards
+     * @param item the item that changed
+     * @param previousLength the length the item was accounted for with
+     * @param newLength the new length of the item formatted with {@link LogItem#format(HandlerConfig)}
+     * @return false if the stack wouldn't fit anymore, in which case nothing is changed
+     */
+    public boolean resize(@NotNull LogItem item, int previousLength, int newLength) {
+        if (version != config.getVersion()) {
+            recalculate();
+            return fits();
+        }
+
+        int delta = newLength - previousLength;
+        if (config.getOutputMode() == OutputMode.EMBEDS) {
+            Embed embed = null;
+            for (int i = embeds.size() - 1; i >= 0 && embed == null; i--) {
+                if (embeds.get(i).items.contains(item)) embed = embeds.get(i);
+            }
+            if (embed == null) return false;
+
+            int previousEmbedLength = getRenderedLength(embed.items.size(), embed.formattedLength);
+            int newEmbedLength = getRenderedLength(embed.items.size(), embed.formattedLength + delta);
+            if (newEmbedLength > MessageLimits.MAX_EMBED_DESCRIPTION_LENGTH
+                    || getEmbedsLength() - previousEmbedLength + newEmbedLength > MessageLimits.MAX_EMBED_TOTAL_LENGTH) return false;
+            embed.formattedLength += delta;
+        } else if (getRenderedLength() + delta + 5 > MessageLimits.MAX_CONTENT_LENGTH) {
+            return false;
+        }
+        formattedLength += delta;
+        return true;
+    }
+
+    /**
+     * @return the embeds the items are packed into with {@link OutputMode#EMBEDS}, in order
+     */
+    public @NotNull List<Embed> getEmbeds() {
+        if (version != config.getVersion()) recalculate();
+        return Collections.unmodifiableList(embeds);
+    }
+
+    private boolean fits() {
+        if (config.getOutputMode() != OutputMode.EMBEDS) return getRenderedLength() + 5 <= MessageLimits.MAX_CONTENT_LENGTH;
+        if (embeds.size() > MessageLimits.MAX_EMBEDS || getEmbedsLength() > MessageLimits.MAX_EMBED_TOTAL_LENGTH) return false;
+        for (Embed embed : embeds) {
+            if (getRenderedLength(embed.items.size(), embed.formattedLength) > MessageLimits.MAX_EMBED_DESCRIPTION_LENGTH) return false;
+        }
+        return true;
+    }
+
+    private void addToEmbed(LogItem item, int formattedLength) {
+        Embed embed = placeInEmbed(item, formattedLength) == Placement.LAST ? embeds.get(embeds.size() - 1) : null;
+        if (embed == null) {
+            embed = new Embed(item.getLevel());
+            embeds.add(embed);
+        }
+        embed.items.add(item);
+        embed.formattedLength += formattedLength;
+        if (item.getLevel().compareTo(embed.level) > 0) embed.level = item.getLevel();
+    }
+
+    /**
+     * Decide which embed an item goes in: the last one, if it's of the same level or levels aren't separated, and the
+     * item fits in its description; otherwise a new one, if there's room for another embed
+     */
+    private Placement placeInEmbed(LogItem item, int formattedLength) {
+        int embedsLength = getEmbedsLength();
+        if (!embeds.isEmpty()) {
+            Embed last = embeds.get(embeds.size() - 1);
+            if (!config.isEmbedPerLevel() || last.level == item.getLevel()) {
+                int lastLength = getRenderedLength(last.items.size(), last.formattedLength);
+                int grownLength = getRenderedLength(last.items.size() + 1, last.formattedLength + formattedLength);
+                if (grownLength <= MessageLimits.MAX_EMBED_DESCRIPTION_LENGTH
+                        && embedsLength - lastLength + grownLength <= MessageLimits.MAX_EMBED_TOTAL_LENGTH) {
+                    return Placement.LAST;
+                }
+            }
+        }
+
+        if (embeds.size() < MessageLimits.MAX_EMBEDS
+                && embedsLength + getRenderedLength(1, formattedLength) <= MessageLimits.MAX_EMBED_TOTAL_LENGTH) {
+            return Placement.NEW;
+        }
+        return Placement.NONE;
+    }
+
+    /**
+     * Upper bound of the combined length of the descriptions of all embeds
+     */
+    private int getEmbedsLength() {
+        int length = 0;
+        for (Embed embed : embeds) length += getRenderedLength(embed.items.size(), embed.formattedLength);
+        return length;
+    }
+
+    /**
+     * Upper bound of the length of the message rendered from this stack, excluding the item separator of an additional item
+     */
+    private int getRenderedLength() {
+        return getRenderedLength(items.size(), formattedLength);
+    }
+
+    /**
+     * Upper bound of the length of the given amount of items rendered together
+     * @param size the amount of items
+     * @param formattedLength the sum of their formatted lengths
+     */
+    private int getRenderedLength(int size, int formattedLength) {
+        int lengthSum = formattedLength;
+
+        boolean codeBlocks = config.isUseCodeBlocks();
+        if (codeBlocks) lengthSum += "```".length() * 2; // code block backticks
+        lengthSum += "\n".length() * (size + (codeBlocks ? 1 : -1)); // newlines (one per element + 1 (with code blocks) or - 1 (without code blocks))
+
+        if (config.isColored()) {
+            lengthSum += "diff".length(); // language
+            lengthSum += "- ".length() * size; // language symbols
+        }
+
+        if (config.isSplitCodeBlockForLinks()) {
+            lengthSum += "```".length() * 2;
+            lengthSum += "\n".length() * 2;
+            if (config.isColored()) {
+                lengthSum += "diff".length();
+            }
+        }
+
+        return lengthSum;
+    }
+
+    /**
+     * Format the items again after the config has changed, the running total no longer matching their formatted length
+     */
+    private void recalculate() {
+        version = config.getVersion();
+        formattedLength = 0;
+        attachments = 0;
+        embeds.clear();
+        boolean packEmbeds = config.getOutputMode() == OutputMode.EMBEDS;
+        for (LogItem item : items) {
+            int length = item.getFormattedLength(config);
+            formattedLength += length;
+            if (item.getTraceAttachment(config) != null) attachments++;
+            if (packEmbeds) addToEmbed(item, length);
+        }
+    }
+
+    @Override
+    public void clear() {
+        items.clear();
+        embeds.clear();
+        formattedLength = 0;
+        attachments = 0;
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return items.contains(item);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * @return an unmodifiable view of the items in this stack
+     */
+    public @NotNull Set<LogItem> getItems() {
+        return Collections.unmodifiableSet(items);
+    }
+
+    /**
+     * @return an iterator over the items in this stack, removing through which accounts for the removed item
+     */
+    @Override
+    public @NotNull Iterator<LogItem> iterator() {
+        Iterator<LogItem> iterator = items.iterator();
+        return new Iterator<LogItem>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public LogItem next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                recalculate();
+            }
+        };
+    }
+
+    private enum Placement {
+        LAST, NEW, NONE
+    }
+
+    /**
+     * A run of consecutive items rendered into the description of one embed
+     */
+    public static final class Embed {
+
+        /**
+         * The most severe level of the items in this embed, deciding its color
+         */
+        @Getter private LogLevel level;
+        private final List<LogItem> items = new ArrayList<>();
+        private int formattedLength;
+
+        private Embed(LogLevel level) {
+            this.level = level;
+        }
+
+        /**
+         * @return an unmodifiable view of the items in this embed
+         */
+        public @NotNull List<LogItem> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the message of a {@link LogItem} that's too long for a single line of the live message into chunks which
+ * each fit one, preferring to split at a line break within {@link #LINE_BREAK_TOLERANCE} characters of the end of a
+ * chunk, and never between the two halves of a surrogate pair.
+ * <p>
+ * The first chunk replaces the message of the item itself, the following chunks become items of their own. Anything
+ * past {@link HandlerConfig#getMaxMessageLength()} or {@link #MAX_CHUNKS} chunks is dropped, which the last chunk notes.
+ * If the prefix and suffix leave less than {@link #MIN_CHUNK_LENGTH} characters of a line, the message isn't split
+ * and the line is clipped when formatted instead.
+ */
+public final class MessageChunker {
+
+    /**
+     * How many characters short of the end of a chunk a line break may be for the chunk to end there instead
+     */
+    static final int LINE_BREAK_TOLERANCE = 400;
+
+    /**
+     * Maximum amount of chunks a message is split into, including the first
+     */
+    static final int MAX_CHUNKS = 100;
+
+    /**
+     * Minimum amount of characters of the message each chunk must have room for, below which the message isn't split
+     */
+    static final int MIN_CHUNK_LENGTH = 100;
+
+    private static final int TRUNCATION_NOTE_LENGTH = " [10000000000 characters truncated]".length();
+
+    private final String message;
+    private int end;
+    private final int chunkLength;
+    private int position;
+
+    /**
+     * Split the message of the item if it's too long for a single line, replacing its message with the first chunk
+     * @param item the item to split
+     * @param config the config to measure the formatted length of the chunks with
+     * @return items for the chunks following the first, in order, empty if the message fit in a single line
+     */
+    public static @NotNull List<LogItem> split(@NotNull LogItem item, @NotNull HandlerConfig config) {
+        MessageChunker chunker = new MessageChunker(item, config);
+        if (chunker.position >= chunker.end) return Collections.emptyList();
+
+        List<LogItem> chunks = new ArrayList<>();
+        while (chunker.position < chunker.end) {
+            boolean last = chunks.size() + 2 >= MAX_CHUNKS;
+            chunks.add(new LogItem(item.getHandler(), item.getLogger(), item.getTimestamp(), item.getLevel(), chunker.nextChunk(chunker.chunkLength, last), null));
+        }
+        return chunks;
+    }
+
+    private MessageChunker(LogItem item, HandlerConfig config) {
+        String message = item.getMessage();
+        this.message = message != null ? message : "";
+
+        // all chunks share the item's logger, level and timestamp, so they take up the same room for prefix and suffix
+        int formattingLength = config.getFormattingLength(item);
+        boolean groupable = item.getThrowable() != null && config.getExceptionGroupingWindow() > 0;
+        int firstChunkLength = (groupable ? LogItem.CLIPPING_MAX_LENGTH - LogItem.REPEAT_COUNTER_LENGTH : LogItem.CLIPPING_MAX_LENGTH) - formattingLength;
+        this.chunkLength = LogItem.CLIPPING_MAX_LENGTH - formattingLength;
+
+        int length = this.message.length();
+        if (Math.min(firstChunkLength, chunkLength) - TRUNCATION_NOTE_LENGTH < MIN_CHUNK_LENGTH) {
+            // so long a prefix or suffix would split the message into slivers, leave it to be clipped instead
+            this.end = length;
+            this.position = length;
+            return;
+        }
+
+        int maxLength = config.getMaxMessageLength();
+        int end = maxLength > 0 && length > maxLength ? maxLength : length;
+        if (end < length && Character.isHighSurrogate(this.message.charAt(end - 1))) end--;
+        this.end = end;
+
+        if (end < length || length > firstChunkLength) {
+            item.setMessage(nextChunk(firstChunkLength, false));
+        } else {
+            this.position = end;
+        }
+    }
+
+    /**
+     * @param length the amount of characters the chunk may take up, including the truncation note
+     * @param last whether this is the last chunk allowed, after which the rest of the message is dropped
+     */
+    private String nextChunk(int length, boolean last) {
+        boolean truncated = end < message.length();
+        int room = truncated ? length - TRUNCATION_NOTE_LENGTH : length;
+        if (last && end - position > room) {
+            room = length - TRUNCATION_NOTE_LENGTH;
+            end = position + room;
+            if (Character.isHighSurrogate(message.charAt(end - 1))) end--;
+            truncated = true;
+        }
+
+        if (end - position <= room) {
+            String chunk = message.substring(position, end);
+            position = end;
+            return truncated ? chunk + " [" + (message.length() - end) + " characters truncated]" : chunk;
+        }
+
+        int split = position + room;
+        int lineBreak = message.lastIndexOf('\n', split);
+        if (lineBreak > position && lineBreak >= split - LINE_BREAK_TOLERANCE) {
+            String chunk = message.substring(position, lineBreak > position + 1 && message.charAt(lineBreak - 1) == '\r' ? lineBreak - 1 : lineBreak);
+            position = lineBreak + 1;
+            return chunk;
+        }
+
+        if (Character.isHighSurrogate(message.charAt(split - 1))) split--;
+        String chunk = message.substring(position, split);
+        position = split;
+        return chunk;
+    }
+
+}
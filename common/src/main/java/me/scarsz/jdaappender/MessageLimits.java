@@ -0,0 +1,41 @@
+package me.scarsz.jdaappender;
+
+/**
+ * Limits Discord puts on the size of a message, shared by the handlers of all JDA versions
+ */
+public final class MessageLimits {
+
+    /**
+     * Maximum length of the content of a message
+     */
+    public static final int MAX_CONTENT_LENGTH = 2000;
+
+    /**
+     * Maximum amount of embeds in a message
+     */
+    public static final int MAX_EMBEDS = 10;
+
+    /**
+     * Maximum length of the description of an embed
+     */
+    public static final int MAX_EMBED_DESCRIPTION_LENGTH = 4096;
+
+    /**
+     * Maximum combined length of the text of all embeds in a message
+     */
+    public static final int MAX_EMBED_TOTAL_LENGTH = 6000;
+
+    /**
+     * Maximum amount of files attached to a message
+     */
+    public static final int MAX_ATTACHMENTS = 10;
+
+    /**
+     * Maximum size in bytes of a file attached to a message, the lowest upload limit Discord has had for servers
+     * without boosts
+     */
+    public static final int MAX_ATTACHMENT_SIZE = 8 * 1024 * 1024;
+
+    private MessageLimits() {}
+
+}
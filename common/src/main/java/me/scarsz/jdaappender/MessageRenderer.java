@@ -0,0 +1,310 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * Renders a stack of {@link LogItem}s to the content of a Discord message.
+ * Code block fences, diff symbols, the fences around items split out for links and the newlines between items are
+ * written in a single pass into a reused buffer. Fences that would enclose nothing are left out instead of being
+ * removed afterwards, and consecutive newlines are collapsed while writing, giving the same content as joining the
+ * items and cleaning up empty code blocks and blank lines in separate passes.
+ * The offsets of the links in the content are recorded along the way, using the links found once per formatted item.
+ * Not thread-safe; meant to be used by the thread that flushes the handler.
+ */
+public class MessageRenderer {
+
+    private static final String FENCE = "```";
+
+    private final HandlerConfig config;
+    private final StringBuilder buffer = new StringBuilder(2000);
+    private String[] formatted = new String[16];
+    private boolean[] split = new boolean[16];
+    private int[][] itemLinks = new int[16][];
+    private int[] links = new int[16];
+    private int linkCount;
+
+    public MessageRenderer(@NotNull HandlerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Render the given items to message content
+     * @param items the items to render, in order
+     * @param splitForLinks whether an item contains a link, and should be put outside the surrounding code block
+     *                      when {@link HandlerConfig#isSplitCodeBlockForLinks()} is enabled
+     * @return the message content
+     */
+    public @NotNull Rendered render(@NotNull Collection<LogItem> items, @NotNull Predicate<LogItem> splitForLinks) {
+        boolean codeBlocks = config.isUseCodeBlocks();
+        boolean colored = config.isColored();
+        boolean splitLinks = config.isSplitCodeBlockForLinks();
+
+        int size = items.size();
+        if (size == 0) return new Rendered("", LinkDetector.NONE, Collections.emptyList());
+        if (formatted.length < size) {
+            formatted = Arrays.copyOf(formatted, Math.max(size, formatted.length * 2));
+            split = Arrays.copyOf(split, formatted.length);
+            itemLinks = Arrays.copyOf(itemLinks, formatted.length);
+        }
+
+        List<TraceAttachment> attachments = Collections.emptyList();
+        boolean fencesSafe = true;
+        int index = 0;
+        for (LogItem item : items) {
+            String line = item.format(config);
+            TraceAttachment attachment = item.getTraceAttachment(config);
+            if (attachment != null) {
+                if (attachments.isEmpty()) attachments = new ArrayList<>();
+                attachments.add(attachment);
+            }
+            formatted[index] = line;
+            itemLinks[index] = item.getFormattedLinks(config);
+            split[index] = splitLinks && splitForLinks.test(item);
+            if (codeBlocks && !isFenceSafe(line)) fencesSafe = false;
+            index++;
+        }
+
+        try {
+            if (!fencesSafe) {
+                String content = renderJoined(items, colored);
+                return new Rendered(content, LinkDetector.findLinks(content), attachments);
+            }
+
+            buffer.setLength(0);
+            linkCount = 0;
+            if (!codeBlocks) {
+                for (int i = 0; i < size; i++) {
+                    if (i > 0) newline();
+                    append(formatted[i], itemLinks[i]);
+                }
+                return rendered(attachments);
+            }
+
+            String language = colored ? "diff" : "";
+            index = 0;
+            for (LogItem item : items) {
+                boolean splitItem = split[index];
+                boolean previousSplit = index > 0 && split[index - 1];
+
+                if (index == 0) {
+                    // the opening fence is left out when the first item is split out of it right away
+                    if (!splitItem) {
+                        buffer.append(FENCE).append(language);
+                        newline();
+                    }
+                } else {
+                    // a split item's closing fence is left out when the next item is split as well
+                    if (previousSplit && !splitItem) buffer.append(FENCE).append(language);
+                    if (!previousSplit || !splitItem) newline();
+                }
+
+                if (splitItem) {
+                    if (index > 0 && !previousSplit) buffer.append(FENCE);
+                    newline();
+                    append(formatted[index], itemLinks[index]);
+                    newline();
+                } else {
+                    if (colored) buffer.append(item.getLevel().getLevelSymbol()).append(' ');
+                    append(formatted[index], itemLinks[index]);
+                }
+                index++;
+            }
+            if (!split[size - 1]) buffer.append(FENCE);
+
+            return rendered(attachments);
+        } finally {
+            Arrays.fill(formatted, 0, size, null);
+            Arrays.fill(itemLinks, 0, size, null);
+        }
+    }
+
+    /**
+     * Render the embeds of the given stack, for {@link OutputMode#EMBEDS}. The description of each embed is rendered
+     * the same way as message content.
+     * @param stack the stack to render
+     * @param splitForLinks whether an item contains a link, and should be put outside the surrounding code block
+     *                      when {@link HandlerConfig#isSplitCodeBlockForLinks()} is enabled
+     * @return the message, with its {@link Rendered#getEmbeds() embeds}
+     */
+    public @NotNull Rendered renderEmbeds(@NotNull LogStack stack, @NotNull Predicate<LogItem> splitForLinks) {
+        List<RenderedEmbed> embeds = new ArrayList<>();
+        List<TraceAttachment> attachments = new ArrayList<>();
+        for (LogStack.Embed embed : stack.getEmbeds()) {
+            Rendered description = render(embed.getItems(), splitForLinks);
+            embeds.add(new RenderedEmbed(embed.getLevel(), description));
+            attachments.addAll(description.getAttachments());
+        }
+        return new Rendered(embeds, attachments);
+    }
+
+    private Rendered rendered(List<TraceAttachment> attachments) {
+        return new Rendered(buffer.toString(), linkCount > 0 ? Arrays.copyOf(links, linkCount) : LinkDetector.NONE, attachments);
+    }
+
+    /**
+     * Whether a formatted item can't form a code block fence with the fences around it,
+     * so that the fences around it can be decided without looking at the content
+     */
+    private static boolean isFenceSafe(String line) {
+        return !line.isEmpty()
+                && line.charAt(0) != '`'
+                && line.charAt(line.length() - 1) != '`'
+                && !line.contains(FENCE);
+    }
+
+    /**
+     * Append text to the buffer, collapsing consecutive newlines, and record where its links end up
+     * @param links the links in the text as returned by {@link LinkDetector#findLinks(String)}
+     */
+    private void append(String text, int[] links) {
+        int start = 0;
+        int length = text.length();
+        int link = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || text.charAt(i) == '\n') {
+                // links never contain newlines, so they're shifted by the same offset as the line they're in
+                int offset = buffer.length() - start;
+                for (; link < links.length && links[link] < i; link += 2) {
+                    addLink(links[link] + offset, links[link + 1] + offset);
+                }
+                buffer.append(text, start, i);
+                if (i < length) newline();
+                start = i + 1;
+            }
+        }
+    }
+
+    private void addLink(int start, int schemeEnd) {
+        if (linkCount + 2 > links.length) links = Arrays.copyOf(links, links.length * 2);
+        links[linkCount++] = start;
+        links[linkCount++] = schemeEnd;
+    }
+
+    private void newline() {
+        int length = buffer.length();
+        if (length == 0 || buffer.charAt(length - 1) != '\n') buffer.append('\n');
+    }
+
+    /**
+     * Join the items first and clean up empty code blocks and blank lines afterwards,
+     * for content that contains backticks which could take part in forming a code block fence
+     */
+    private String renderJoined(Collection<LogItem> items, boolean colored) {
+        StringJoiner joiner = new StringJoiner("\n");
+        int index = 0;
+        for (LogItem item : items) {
+            String line = formatted[index];
+            if (split[index]) {
+                joiner.add(FENCE + "\n" + line + "\n" + FENCE + (colored ? "diff" : ""));
+            } else {
+                joiner.add(colored ? item.getLevel().getLevelSymbol() + " " + line : line);
+            }
+            index++;
+        }
+
+        boolean codeBlock = config.isUseCodeBlocks();
+        String full = codeBlock ? FENCE + (colored ? "diff" : "") + "\n" + joiner + FENCE : joiner.toString();
+
+        if (codeBlock) {
+            // safeguard against empty codeblocks
+            full = full.replace(FENCE + (colored ? "diff" : "") + FENCE, "");
+            full = full.replace(FENCE + (colored ? "diff" : "") + "\n" + FENCE, "");
+        }
+
+        // safeguard against empty lines
+        while (full.contains("\n\n")) full = full.replace("\n\n", "\n");
+
+        return full;
+    }
+
+    /**
+     * Rendered message content, along with the links in it
+     */
+    public static final class Rendered {
+
+        @Getter private final String content;
+        private final int[] links;
+        /**
+         * The embeds of the message with {@link OutputMode#EMBEDS}, null if the message only has content
+         */
+        @Getter @Nullable private final List<RenderedEmbed> embeds;
+        /**
+         * The stack traces to attach to the message, referenced by the items they were taken out of
+         */
+        @Getter private final List<TraceAttachment> attachments;
+
+        Rendered(@NotNull String content, int[] links, @NotNull List<TraceAttachment> attachments) {
+            this.content = content;
+            this.links = links;
+            this.embeds = null;
+            this.attachments = attachments;
+        }
+        Rendered(@NotNull List<RenderedEmbed> embeds, @NotNull List<TraceAttachment> attachments) {
+            this.content = "";
+            this.links = LinkDetector.NONE;
+            this.embeds = embeds;
+            this.attachments = attachments;
+        }
+
+        /**
+         * Whether the given message would look the same as this one, so that sending it would change nothing
+         * @param other the message to compare to
+         * @return true if the content, embeds and attachments are the same
+         */
+        public boolean isSameAs(@Nullable Rendered other) {
+            if (other == null || !content.equals(other.content) || attachments.size() != other.attachments.size()) return false;
+            for (int i = 0; i < attachments.size(); i++) {
+                if (!attachments.get(i).getFileName().equals(other.attachments.get(i).getFileName())) return false;
+            }
+            if (embeds == null || other.embeds == null) return embeds == other.embeds;
+            if (embeds.size() != other.embeds.size()) return false;
+            for (int i = 0; i < embeds.size(); i++) {
+                RenderedEmbed embed = embeds.get(i);
+                RenderedEmbed otherEmbed = other.embeds.get(i);
+                if (embed.level != otherEmbed.level || !embed.description.isSameAs(otherEmbed.description)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the content with the schemes of its links removed, so Discord doesn't turn them into links
+         */
+        public @NotNull Rendered withoutLinkSchemes() {
+            if (embeds != null) {
+                List<RenderedEmbed> defused = new ArrayList<>(embeds.size());
+                for (RenderedEmbed embed : embeds) {
+                    defused.add(new RenderedEmbed(embed.getLevel(), embed.getDescription().withoutLinkSchemes()));
+                }
+                return new Rendered(defused, attachments);
+            }
+            return links.length == 0 ? this : new Rendered(LinkDetector.removeSchemes(content, links), LinkDetector.NONE, attachments);
+        }
+
+    }
+
+    /**
+     * A rendered embed, colored by {@link LogLevel#getColor()}
+     */
+    public static final class RenderedEmbed {
+
+        @Getter private final LogLevel level;
+        @Getter private final Rendered description;
+
+        RenderedEmbed(@NotNull LogLevel level, @NotNull Rendered description) {
+            this.level = level;
+            this.description = description;
+        }
+
+    }
+
+}
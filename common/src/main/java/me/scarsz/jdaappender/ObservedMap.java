@@ -0,0 +1,257 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Insertion-ordered map that runs a callback whenever it's modified, whether through its own mutators or through its
+ * key, value and entry views, used by {@link HandlerConfig} to invalidate caches derived from its mutable collections
+ */
+class ObservedMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Runnable onChange;
+
+    ObservedMap(@NotNull Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V previous = super.put(key, value);
+        onChange.run();
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        super.putAll(m);
+        onChange.run();
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        V previous = super.putIfAbsent(key, value);
+        onChange.run();
+        return previous;
+    }
+
+    @Override
+    public V remove(Object key) {
+        V previous = super.remove(key);
+        onChange.run();
+        return previous;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        boolean removed = super.remove(key, value);
+        onChange.run();
+        return removed;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        V previous = super.replace(key, value);
+        onChange.run();
+        return previous;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        boolean replaced = super.replace(key, oldValue, newValue);
+        onChange.run();
+        return replaced;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        super.replaceAll(function);
+        onChange.run();
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = super.computeIfAbsent(key, mappingFunction);
+        onChange.run();
+        return value;
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V value = super.computeIfPresent(key, remappingFunction);
+        onChange.run();
+        return value;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V value = super.compute(key, remappingFunction);
+        onChange.run();
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        V merged = super.merge(key, value, remappingFunction);
+        onChange.run();
+        return merged;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        onChange.run();
+    }
+
+    @Override
+    public @NotNull Set<K> keySet() {
+        return new ObservedSet<>(super.keySet(), UnaryOperator.identity());
+    }
+
+    @Override
+    public @NotNull Collection<V> values() {
+        Collection<V> values = super.values();
+        return new AbstractCollection<V>() {
+            @Override
+            public @NotNull Iterator<V> iterator() {
+                return observe(values.iterator(), UnaryOperator.identity());
+            }
+
+            @Override
+            public int size() {
+                return values.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return values.contains(o);
+            }
+
+            @Override
+            public void clear() {
+                ObservedMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Set<Map.Entry<K, V>> entrySet() {
+        return new ObservedSet<>(super.entrySet(), ObservedEntry::new);
+    }
+
+    /**
+     * Wrap an iterator of one of the views, so that removing through it runs the callback
+     */
+    private <E> Iterator<E> observe(Iterator<E> iterator, UnaryOperator<E> wrapper) {
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return wrapper.apply(iterator.next());
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                onChange.run();
+            }
+        };
+    }
+
+    /**
+     * Key or entry view, all of whose removals go through its iterator
+     */
+    private final class ObservedSet<E> extends AbstractSet<E> {
+
+        private final Set<E> set;
+        private final UnaryOperator<E> wrapper;
+
+        private ObservedSet(Set<E> set, UnaryOperator<E> wrapper) {
+            this.set = set;
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public @NotNull Iterator<E> iterator() {
+            return observe(set.iterator(), wrapper);
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return set.contains(o);
+        }
+
+        @Override
+        public void clear() {
+            ObservedMap.this.clear();
+        }
+
+    }
+
+    /**
+     * Entry whose {@link #setValue(Object)} runs the callback
+     */
+    private final class ObservedEntry implements Map.Entry<K, V> {
+
+        private final Map.Entry<K, V> entry;
+
+        private ObservedEntry(Map.Entry<K, V> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public K getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public V getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = entry.setValue(value);
+            onChange.run();
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return entry.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,20 @@
+package me.scarsz.jdaappender;
+
+/**
+ * How the live message carries the log lines
+ * @see HandlerConfig#setOutputMode(OutputMode)
+ */
+public enum OutputMode {
+
+    /**
+     * As the content of the message, up to {@link MessageLimits#MAX_CONTENT_LENGTH} characters per message
+     */
+    CONTENT,
+
+    /**
+     * As the descriptions of up to {@link MessageLimits#MAX_EMBEDS} embeds colored by level, which fit up to
+     * {@link MessageLimits#MAX_EMBED_TOTAL_LENGTH} characters per message
+     */
+    EMBEDS
+
+}
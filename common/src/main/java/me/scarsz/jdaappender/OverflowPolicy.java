@@ -0,0 +1,31 @@
+package me.scarsz.jdaappender;
+
+/**
+ * Behavior of the ingestion buffer when a {@link LogItem} is enqueued while it is already at capacity
+ * @see HandlerConfig#setOverflowPolicy(OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the incoming item, keeping what is already buffered
+     */
+    DROP_NEWEST,
+
+    /**
+     * Evict the oldest buffered items until the incoming item fits
+     */
+    DROP_OLDEST,
+
+    /**
+     * Wait up to {@link HandlerConfig#getOverflowBlockTimeout()} milliseconds for room, then discard the incoming item
+     */
+    BLOCK,
+
+    /**
+     * Discard the incoming item if its level is below {@link HandlerConfig#getOverflowMinimumLevel()},
+     * otherwise evict the oldest buffered items to make room for it as long as they're below that level.
+     * Items at or above it are never evicted; if the oldest one is, the incoming item is discarded instead
+     */
+    DROP_BELOW_LEVEL
+
+}
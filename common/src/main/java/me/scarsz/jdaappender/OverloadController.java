@@ -0,0 +1,240 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Sheds load while lines are logged faster than they can be sent, so that the channel keeps up with the lines that
+ * matter instead of falling further and further behind.
+ * <p>
+ * Every {@link HandlerConfig#getOverloadCheckInterval()} milliseconds, the lines logged are compared to the lines
+ * sent. While more are logged than sent and the backlog is above {@link HandlerConfig#getOverloadBacklog()}, the
+ * controller goes up a {@link Stage}; once the backlog has drained to a tenth of that, it goes back down a stage.
+ * Lines below {@link LogLevel#WARN} that are held back are counted per logger and sent as rollups every
+ * {@link HandlerConfig#getOverloadRollupInterval()} milliseconds. Every change of stage is logged to the channel.
+ * Not thread-safe; the handler uses it while holding the lock of its {@link LogStack}.
+ */
+public class OverloadController {
+
+    /**
+     * How much the controller holds back, each stage holding back more than the previous
+     */
+    public enum Stage {
+
+        /**
+         * Every line is sent
+         */
+        NORMAL("sending every line again"),
+
+        /**
+         * Lines below {@link LogLevel#WARN} from the loggers that log the most are rolled up
+         */
+        QUIET_NOISY_LOGGERS("rolling up lines below WARN from the noisiest loggers"),
+
+        /**
+         * Additionally, only one in {@link HandlerConfig#getOverloadSampleRate()} lines below {@link LogLevel#WARN}
+         * from other loggers is sent, the rest is rolled up
+         */
+        SAMPLE("rolling up lines below WARN from the noisiest loggers, and sampling them from other loggers"),
+
+        /**
+         * All lines below {@link LogLevel#WARN} are rolled up
+         */
+        ROLLUP("rolling up all lines below WARN");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+    }
+
+    /**
+     * Share of the lines logged during a check interval above which a logger counts as noisy
+     */
+    private static final double NOISY_SHARE = 0.1;
+    private static final int ROLLUP_LINES = 10;
+
+    private final HandlerConfig config;
+    private final LongSupplier clock;
+    @Getter private Stage stage = Stage.NORMAL;
+
+    private long intervalStart;
+    private int logged;
+    private int sent;
+    private final Map<String, Integer> loggedPerLogger = new HashMap<>();
+    private Set<String> noisyLoggers = Collections.emptySet();
+    private int sampled;
+
+    private long rollupStart;
+    private final Map<String, int[]> rolledUp = new HashMap<>();
+
+    public OverloadController(@NotNull HandlerConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+    OverloadController(@NotNull HandlerConfig config, @NotNull LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.intervalStart = clock.getAsLong();
+    }
+
+    /**
+     * Count a processed item as logged, and decide whether it's sent or rolled up.
+     * Items counted as a repeat of another shouldn't be passed, as they're never sent on their own.
+     * @param item the item
+     * @return true if the item should be sent, false if it was counted in a rollup instead
+     */
+    public boolean admit(@NotNull LogItem item) {
+        if (config.getOverloadBacklog() <= 0) return true;
+
+        String logger = loggerName(item);
+        logged++;
+        loggedPerLogger.merge(logger, 1, Integer::sum);
+        if (stage == Stage.NORMAL || item.getLevel().compareTo(LogLevel.WARN) >= 0) return true;
+
+        boolean send;
+        switch (stage) {
+            case QUIET_NOISY_LOGGERS:
+                send = !noisyLoggers.contains(logger);
+                break;
+            case SAMPLE:
+                send = !noisyLoggers.contains(logger) && ++sampled % Math.max(1, config.getOverloadSampleRate()) == 0;
+                break;
+            default:
+                send = false;
+        }
+        if (!send) {
+            // a rollup covers the time since its first line, not since the previous rollup
+            if (rolledUp.isEmpty()) rollupStart = clock.getAsLong();
+            rolledUp.computeIfAbsent(logger, k -> new int[LogLevel.values().length])[item.getLevel().ordinal()]++;
+        }
+        return send;
+    }
+
+    /**
+     * Count an item as sent, unless overload handling is disabled and nothing is counted
+     */
+    public void sent() {
+        if (config.getOverloadBacklog() > 0) sent++;
+    }
+
+    /**
+     * Change stage if the check interval has passed, and take the rollups that are due
+     * @param backlog the amount of processed items waiting to be sent
+     * @param handler the handler to create items for
+     * @return items announcing a change of stage and rolling up held back lines, to be sent right away
+     */
+    public @NotNull List<LogItem> update(int backlog, @NotNull IChannelLoggingHandler handler) {
+        if (config.getOverloadBacklog() <= 0 && stage == Stage.NORMAL && rolledUp.isEmpty()) {
+            // drop what was counted before it was disabled, so that it starts from a fresh interval if enabled again
+            if (logged != 0 || sent != 0) resetInterval(clock.getAsLong());
+            return Collections.emptyList();
+        }
+
+        List<LogItem> items = new ArrayList<>(0);
+        long now = clock.getAsLong();
+        if (now - intervalStart >= config.getOverloadCheckInterval()) {
+            check(now, backlog, handler, items);
+        }
+        if (!rolledUp.isEmpty() && (stage == Stage.NORMAL || now - rollupStart >= config.getOverloadRollupInterval())) {
+            items.add(rollup(now, handler));
+        }
+        return items;
+    }
+
+    private void check(long now, int backlog, IChannelLoggingHandler handler, List<LogItem> items) {
+        int threshold = config.getOverloadBacklog();
+        Stage previous = stage;
+        if (threshold > 0 && backlog > threshold && logged > sent && stage != Stage.ROLLUP) {
+            stage = Stage.values()[stage.ordinal() + 1];
+            noisyLoggers = findNoisyLoggers();
+        } else if ((threshold <= 0 || backlog <= threshold / 10) && stage != Stage.NORMAL) {
+            stage = Stage.values()[stage.ordinal() - 1];
+        }
+
+        if (stage != previous) {
+            long seconds = Math.max(1, (now - intervalStart) / 1000);
+            StringBuilder message = new StringBuilder(stage.ordinal() > previous.ordinal() ? "Overloaded: " : "Recovering: ")
+                    .append(format(logged)).append(" lines logged and ").append(format(sent)).append(" sent in the last ")
+                    .append(seconds).append(" s, ").append(format(backlog)).append(" waiting. Now ").append(stage.description);
+            if (stage != Stage.NORMAL && stage != Stage.ROLLUP) message.append(' ').append(noisyLoggers);
+            items.add(new LogItem(handler, "Appender", stage.ordinal() > previous.ordinal() ? LogLevel.WARN : LogLevel.INFO, message.toString()));
+        }
+
+        resetInterval(now);
+    }
+
+    private void resetInterval(long now) {
+        intervalStart = now;
+        logged = 0;
+        sent = 0;
+        loggedPerLogger.clear();
+    }
+
+    private Set<String> findNoisyLoggers() {
+        Set<String> noisy = new HashSet<>();
+        String noisiest = null;
+        int noisiestCount = 0;
+        for (Map.Entry<String, Integer> entry : loggedPerLogger.entrySet()) {
+            if (entry.getValue() >= logged * NOISY_SHARE) noisy.add(entry.getKey());
+            if (entry.getValue() > noisiestCount) {
+                noisiest = entry.getKey();
+                noisiestCount = entry.getValue();
+            }
+        }
+        if (noisy.isEmpty() && noisiest != null) noisy.add(noisiest);
+        return noisy;
+    }
+
+    /**
+     * One line per logger and level, such as "com.foo.Bar: 4,312 INFO lines in last 30 s", the largest first
+     */
+    private LogItem rollup(long now, IChannelLoggingHandler handler) {
+        long seconds = Math.max(1, (now - rollupStart) / 1000);
+        List<Object[]> counts = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : rolledUp.entrySet()) {
+            for (int level = entry.getValue().length - 1; level >= 0; level--) {
+                int count = entry.getValue()[level];
+                if (count > 0) counts.add(new Object[] {entry.getKey(), LogLevel.values()[level], count});
+            }
+        }
+        counts.sort((a, b) -> Integer.compare((int) b[2], (int) a[2]));
+
+        StringBuilder message = new StringBuilder("Rolled up:");
+        int remaining = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            Object[] count = counts.get(i);
+            if (i < ROLLUP_LINES) {
+                message.append('\n').append(count[0]).append(": ").append(format((int) count[2])).append(' ')
+                        .append(count[1]).append(" lines in last ").append(seconds).append(" s");
+            } else {
+                remaining += (int) count[2];
+            }
+        }
+        if (remaining > 0) message.append("\nOther loggers: ").append(format(remaining)).append(" lines in last ").append(seconds).append(" s");
+
+        rolledUp.clear();
+        return new LogItem(handler, "Appender", LogLevel.INFO, message.toString());
+    }
+
+    private String loggerName(LogItem item) {
+        String name = config.resolveLoggerName(item.getLogger());
+        return name != null ? name : String.valueOf(item.getLogger());
+    }
+
+    private static String format(int count) {
+        return String.format(Locale.ROOT, "%,d", count);
+    }
+
+}
@@ -0,0 +1,82 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks how many requests are left in Discord's rate limit bucket of each channel and route, so that the handler can
+ * hold back a request that would only be queued by JDA's rate limiter, and keep packing lines into it meanwhile.
+ * <p>
+ * Every request is counted against a bucket of {@link HandlerConfig#getMessageRateLimit()} requests per
+ * {@link HandlerConfig#getMessageRateLimitWindow()} milliseconds, which starts when its first request is made.
+ * JDA doesn't expose the rate limit headers of successful responses, so the budget is kept from the requests alone;
+ * a request that exceeds the actual limit anyway is still queued by JDA's rate limiter.
+ * Thread-safe.
+ */
+public class RateLimitBudget {
+
+    /**
+     * The requests the handler makes, which Discord rate limits separately
+     */
+    public enum Route {
+        SEND_MESSAGE,
+        EDIT_MESSAGE
+    }
+
+    private final HandlerConfig config;
+    private final LongSupplier clock;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    public RateLimitBudget(@NotNull HandlerConfig config) {
+        this(config, System::currentTimeMillis);
+    }
+    RateLimitBudget(@NotNull HandlerConfig config, @NotNull LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    /**
+     * @param channelId the ID of the channel the request is for
+     * @param route the request
+     * @return milliseconds until the request can be made without being rate limited, 0 if it can be made now
+     */
+    public synchronized long getDelay(@NotNull String channelId, @NotNull Route route) {
+        if (config.getMessageRateLimit() <= 0) return 0;
+        Bucket bucket = buckets.get(key(channelId, route));
+        if (bucket == null) return 0;
+
+        long now = clock.getAsLong();
+        return bucket.remaining > 0 || now >= bucket.resetAt ? 0 : bucket.resetAt - now;
+    }
+
+    /**
+     * Count a request against its bucket
+     * @param channelId the ID of the channel the request is for
+     * @param route the request
+     */
+    public synchronized void consume(@NotNull String channelId, @NotNull Route route) {
+        int limit = config.getMessageRateLimit();
+        if (limit <= 0) return;
+
+        long now = clock.getAsLong();
+        Bucket bucket = buckets.computeIfAbsent(key(channelId, route), k -> new Bucket());
+        if (now >= bucket.resetAt) {
+            bucket.remaining = limit;
+            bucket.resetAt = now + config.getMessageRateLimitWindow();
+        }
+        if (bucket.remaining > 0) bucket.remaining--;
+    }
+
+    private static String key(String channelId, Route route) {
+        return route.name() + ':' + channelId;
+    }
+
+    private static final class Bucket {
+        private int remaining;
+        private long resetAt;
+    }
+
+}
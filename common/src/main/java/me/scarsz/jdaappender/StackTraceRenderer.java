@@ -0,0 +1,259 @@
+package me.scarsz.jdaappender;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders throwables the way {@link Throwable#printStackTrace()} does, without going through a
+ * {@link PrintWriter}. The frame lines of each throwable in a chain are cached by the frames themselves, so
+ * an exception that is thrown over and over from the same place only has its header lines rendered again.
+ * Rendering stops once a character limit is reached, as anything past it would be cut off anyway.
+ * <p>
+ * In {@link HandlerConfig#isCompactStackTraces() compact} mode, runs of frames from
+ * {@link HandlerConfig#getElidedFramePrefixes() elided packages} are collapsed into a single line, each throwable
+ * lists at most {@link HandlerConfig#getCompactStackTraceFrames()} frames before "... N more", and the whole trace
+ * stops at {@link HandlerConfig#getCompactStackTraceLength()} characters.
+ */
+public class StackTraceRenderer {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String CAUSE_CAPTION = "Caused by: ";
+    private static final String SUPPRESSED_CAPTION = "Suppressed: ";
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * Throwables that print themselves differently than {@link Throwable} does are printed by themselves
+     */
+    private static final ClassValue<Boolean> CUSTOM_PRINTING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("printStackTrace", PrintWriter.class).getDeclaringClass() != Throwable.class;
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
+        }
+    };
+
+    private final HandlerConfig config;
+    private final Map<FrameBlock, String> cache = new LinkedHashMap<FrameBlock, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FrameBlock, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public StackTraceRenderer(@NotNull HandlerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Append the stack trace of the throwable, as printed by {@link Throwable#printStackTrace()}
+     * @param builder the builder to append to
+     * @param throwable the throwable to render
+     * @param limit the length of the builder after which rendering may stop, at most {@link LogItem#CLIPPING_MAX_LENGTH}
+     */
+    public void render(@NotNull StringBuilder builder, @NotNull Throwable throwable, int limit) {
+        if (CUSTOM_PRINTING.get(throwable.getClass())) {
+            builder.append(print(throwable));
+            return;
+        }
+
+        boolean compact = config.isCompactStackTraces();
+        int budget = compact ? Math.min(limit, builder.length() + config.getCompactStackTraceLength()) : limit;
+
+        Set<Throwable> dejaVu = Collections.newSetFromMap(new IdentityHashMap<>());
+        dejaVu.add(throwable);
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        builder.append(throwable).append(LINE_SEPARATOR);
+        boolean exhausted = appendFrames(builder, trace, trace.length - 1, 0, "", compact) >= budget;
+        if (!exhausted) {
+            for (Throwable suppressed : throwable.getSuppressed()) {
+                if (exhausted = renderEnclosed(builder, suppressed, trace, SUPPRESSED_CAPTION, "\t", dejaVu, compact, budget)) break;
+            }
+        }
+        Throwable cause = throwable.getCause();
+        if (!exhausted && cause != null) {
+            exhausted = renderEnclosed(builder, cause, trace, CAUSE_CAPTION, "", dejaVu, compact, budget);
+        }
+
+        if (exhausted && compact && budget < limit) {
+            builder.append("\t...").append(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * The complete stack trace of the throwable as printed by {@link Throwable#printStackTrace()}, without a limit
+     * and regardless of {@link HandlerConfig#isCompactStackTraces()}
+     * @param throwable the throwable to print
+     * @return the stack trace
+     */
+    public static @NotNull String print(@NotNull Throwable throwable) {
+        StringWriter stringWriter = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(stringWriter)) {
+            throwable.printStackTrace(printWriter);
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * @return true if the budget has been used up
+     */
+    private boolean renderEnclosed(StringBuilder builder, Throwable throwable, StackTraceElement[] enclosingTrace,
+                                   String caption, String prefix, Set<Throwable> dejaVu, boolean compact, int budget) {
+        if (!dejaVu.add(throwable)) {
+            builder.append(prefix).append(caption).append("[CIRCULAR REFERENCE: ").append(throwable).append(']').append(LINE_SEPARATOR);
+            return builder.length() >= budget;
+        }
+
+        // frames in common with the enclosing trace are summarized as "... N more"
+        StackTraceElement[] trace = throwable.getStackTrace();
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        int framesInCommon = trace.length - 1 - m;
+
+        builder.append(prefix).append(caption).append(throwable).append(LINE_SEPARATOR);
+        if (appendFrames(builder, trace, m, framesInCommon, prefix, compact) >= budget) return true;
+
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            if (renderEnclosed(builder, suppressed, trace, SUPPRESSED_CAPTION, prefix + "\t", dejaVu, compact, budget)) return true;
+        }
+        Throwable cause = throwable.getCause();
+        return cause != null && renderEnclosed(builder, cause, trace, CAUSE_CAPTION, prefix, dejaVu, compact, budget);
+    }
+
+    /**
+     * Append the lines of the frames up to and including the given end index, using the cache
+     * @return the length of the builder afterwards
+     */
+    private int appendFrames(StringBuilder builder, StackTraceElement[] trace, int end, int framesInCommon, String prefix, boolean compact) {
+        FrameBlock key = new FrameBlock(trace, end, framesInCommon, prefix, compact);
+        String block;
+        synchronized (cache) {
+            block = cache.get(key);
+        }
+        if (block == null) {
+            block = compact ? renderCompactFrames(key) : renderFrames(key);
+            synchronized (cache) {
+                cache.put(key, block);
+            }
+        }
+        return builder.append(block).length();
+    }
+
+    private String renderFrames(FrameBlock key) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= key.end && builder.length() < LogItem.CLIPPING_MAX_LENGTH; i++) {
+            builder.append(key.prefix).append("\tat ").append(key.trace[i]).append(LINE_SEPARATOR);
+        }
+        if (key.framesInCommon != 0) {
+            builder.append(key.prefix).append("\t... ").append(key.framesInCommon).append(" more").append(LINE_SEPARATOR);
+        }
+        return builder.toString();
+    }
+
+    private String renderCompactFrames(FrameBlock key) {
+        List<String> elidedPrefixes = config.getElidedFramePrefixes();
+        int maximumFrames = config.getCompactStackTraceFrames();
+
+        StringBuilder builder = new StringBuilder();
+        int frames = 0;
+        int elided = 0;
+        for (int i = 0; i <= key.end; i++) {
+            if (isElided(key.trace[i], elidedPrefixes)) {
+                elided++;
+                continue;
+            }
+            if (frames == maximumFrames) {
+                // collapse the remaining frames, including the ones in common with the enclosing trace
+                builder.append(key.prefix).append("\t... ").append(key.end + 1 - i + elided + key.framesInCommon).append(" more").append(LINE_SEPARATOR);
+                return builder.toString();
+            }
+            if (elided != 0) {
+                builder.append(key.prefix).append("\t... ").append(elided).append(" elided").append(LINE_SEPARATOR);
+                elided = 0;
+            }
+            builder.append(key.prefix).append("\tat ").append(key.trace[i]).append(LINE_SEPARATOR);
+            frames++;
+        }
+        if (elided + key.framesInCommon != 0) {
+            builder.append(key.prefix).append("\t... ").append(elided + key.framesInCommon).append(" more").append(LINE_SEPARATOR);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isElided(StackTraceElement element, List<String> elidedPrefixes) {
+        String className = element.getClassName();
+        for (String prefix : elidedPrefixes) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Discard all cached frame lines
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Cache key identifying the frame lines of a throwable: its frames up to the end index, and how they're summarized
+     */
+    private static final class FrameBlock {
+
+        private final StackTraceElement[] trace;
+        private final int end;
+        private final int framesInCommon;
+        private final String prefix;
+        private final boolean compact;
+        private final int hash;
+
+        private FrameBlock(StackTraceElement[] trace, int end, int framesInCommon, String prefix, boolean compact) {
+            this.trace = trace;
+            this.end = end;
+            this.framesInCommon = framesInCommon;
+            this.prefix = prefix;
+            this.compact = compact;
+
+            int hash = 31 * (31 * end + framesInCommon) + prefix.hashCode();
+            for (int i = 0; i <= end; i++) hash = 31 * hash + trace[i].hashCode();
+            this.hash = compact ? ~hash : hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FrameBlock)) return false;
+            FrameBlock other = (FrameBlock) o;
+            if (hash != other.hash || end != other.end || framesInCommon != other.framesInCommon
+                    || compact != other.compact || !prefix.equals(other.prefix)) return false;
+            for (int i = 0; i <= end; i++) {
+                if (!trace[i].equals(other.trace[i])) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The complete stack trace of a {@link LogItem}, sent as a file attached to the message the item is in instead of
+ * inline, once it's longer than {@link HandlerConfig#getTraceAttachmentThreshold()}
+ */
+public final class TraceAttachment {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final int id;
+    private final String trace;
+    @Getter private final boolean compressed;
+    private byte[] data;
+
+    TraceAttachment(@NotNull String trace, boolean compressed) {
+        this(SEQUENCE.incrementAndGet(), trace, compressed);
+    }
+    private TraceAttachment(int id, @NotNull String trace, boolean compressed) {
+        this.id = id;
+        this.trace = trace;
+        this.compressed = compressed;
+    }
+
+    /**
+     * The same trace with the same file name, with or without compression
+     * @param compressed whether the data should be gzipped
+     * @return this attachment, or a copy differing in compression
+     */
+    TraceAttachment withCompression(boolean compressed) {
+        return compressed == this.compressed ? this : new TraceAttachment(id, trace, compressed);
+    }
+
+    /**
+     * @return the name of the file, unique for every item, as referenced by the inline line of the item
+     */
+    public @NotNull String getFileName() {
+        return "stacktrace-" + id + (compressed ? ".txt.gz" : ".txt");
+    }
+
+    /**
+     * @return the content of the file, encoded and compressed once on first use
+     */
+    public synchronized byte[] getData() {
+        if (data == null) {
+            byte[] bytes = trace.getBytes(StandardCharsets.UTF_8);
+            if (compressed) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(bytes);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e); // not possible in memory
+                }
+                bytes = out.toByteArray();
+            }
+            data = bytes;
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,98 @@
+package me.scarsz.jdaappender;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compiled form of {@link HandlerConfig#getMessageTransformers()}.
+ * Filters, which are mapped to {@link HandlerConfig#DENY}, are tested first so that denied items are rejected
+ * before any message is rewritten; the remaining transformers then run in insertion order.
+ * Every predicate is tested at most once per item, and the chain stops at the first stage that denies the item.
+ * @see HandlerConfig#getTransformerChain()
+ */
+public final class TransformerChain {
+
+    @Getter private final List<Stage> stages;
+    private final Stage[] filters;
+    private final Stage[] transformers;
+
+    TransformerChain(@NotNull Map<Predicate<LogItem>, Function<String, String>> messageTransformers) {
+        List<Stage> filters = new ArrayList<>();
+        List<Stage> transformers = new ArrayList<>();
+        for (Map.Entry<Predicate<LogItem>, Function<String, String>> entry : messageTransformers.entrySet()) {
+            Stage stage = new Stage(entry.getKey(), entry.getValue());
+            (stage.isFilter() ? filters : transformers).add(stage);
+        }
+
+        this.filters = filters.toArray(new Stage[0]);
+        this.transformers = transformers.toArray(new Stage[0]);
+        List<Stage> stages = new ArrayList<>(filters);
+        stages.addAll(transformers);
+        this.stages = Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Run the item through the chain, updating its message with the output of any matching transformers
+     * @param item the item to filter and transform
+     * @return false if the item was denied by a filter, or by a transformer returning {@code null}
+     */
+    public boolean apply(@NotNull LogItem item) {
+        for (Stage filter : filters) {
+            if (filter.predicate.test(item)) {
+                filter.hits.increment();
+                return false;
+            }
+        }
+
+        for (Stage transformer : transformers) {
+            if (transformer.predicate.test(item)) {
+                transformer.hits.increment();
+                String message = item.getMessage();
+                String transformed = transformer.transformer.apply(message);
+                if (transformed == null) return false;
+                if (transformed != message) item.setMessage(transformed);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A single predicate and its transformer
+     */
+    public static final class Stage {
+
+        @Getter private final Predicate<LogItem> predicate;
+        @Getter private final Function<String, String> transformer;
+        private final LongAdder hits = new LongAdder();
+
+        private Stage(Predicate<LogItem> predicate, Function<String, String> transformer) {
+            this.predicate = predicate;
+            this.transformer = transformer;
+        }
+
+        /**
+         * @return whether this stage unconditionally denies the items it matches
+         */
+        public boolean isFilter() {
+            return transformer == HandlerConfig.DENY;
+        }
+
+        /**
+         * @return how many items matched this stage's predicate since the chain was compiled
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+    }
+
+}
@@ -1,13 +1,10 @@
 package me.scarsz.jdaappender.adapter;
 
 import me.scarsz.jdaappender.IChannelLoggingHandler;
-import me.scarsz.jdaappender.LogItem;
 import me.scarsz.jdaappender.LogLevel;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -18,28 +15,30 @@ public class JavaLoggingAdapter extends Handler {
 
     public JavaLoggingAdapter(IChannelLoggingHandler handler) {
         this.handler = handler;
+        setFilter(record -> {
+            LogLevel level = toLogLevel(record.getLevel());
+            return level != null && handler.isLoggable(level, record.getLoggerName());
+        });
     }
 
     @Override
     public void publish(LogRecord record) {
-        LogLevel level = record.getLevel() == Level.INFO ? LogLevel.INFO
-                : record.getLevel() == Level.WARNING ? LogLevel.WARN
-                : record.getLevel() == Level.SEVERE ? LogLevel.ERROR
-                : record.getLevel() == Level.FINE ? LogLevel.DEBUG
-                : null;
+        if (!isLoggable(record)) return;
 
+        LogLevel level = toLogLevel(record.getLevel());
         if (level != null) {
-            handler.enqueue(new LogItem(
-                    handler,
-                    record.getLoggerName(),
-                    record.getMillis(),
-                    level,
-                    LogItem.stripColors(record.getMessage()),
-                    record.getThrown()
-            ));
+            handler.enqueue(record.getLoggerName(), record.getMillis(), level, record.getMessage(), record.getThrown());
         }
     }
 
+    private static @Nullable LogLevel toLogLevel(Level level) {
+        return level == Level.INFO ? LogLevel.INFO
+                : level == Level.WARNING ? LogLevel.WARN
+                : level == Level.SEVERE ? LogLevel.ERROR
+                : level == Level.FINE ? LogLevel.DEBUG
+                : null;
+    }
+
     @Override
     public void flush() {
         handler.flush();
@@ -47,15 +46,8 @@ public class JavaLoggingAdapter extends Handler {
 
     @Override
     public void close() throws SecurityException {
-        ScheduledFuture<?> f = handler.getScheduledFuture();
-        if (f != null) {
-            f.cancel(false);
-            try {
-                f.get(5, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        handler.stopScheduling();
+        handler.flushAndWait(5, TimeUnit.SECONDS);
     }
 
 }
@@ -1,13 +1,18 @@
 package me.scarsz.jdaappender.adapter;
 
+import me.scarsz.jdaappender.DeferredMessage;
 import me.scarsz.jdaappender.IChannelLoggingHandler;
-import me.scarsz.jdaappender.LogItem;
 import me.scarsz.jdaappender.LogLevel;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
 import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -18,6 +23,18 @@ public class Log4JLoggingAdapter extends AbstractAppender {
 
     private static final PatternLayout PATTERN_LAYOUT;
     private static final boolean LOG_EVENT_HAS_MILLIS = Arrays.stream(LogEvent.class.getMethods()).anyMatch(method -> method.getName().equals("getMillis"));
+    private static final DeferredMessage.Renderer RENDERER = (message, arguments) -> ((Message) message).getFormattedMessage();
+    private static final Class<?> REUSABLE_MESSAGE_CLASS;
+    static {
+        Class<?> reusableMessageClass;
+        try {
+            // log4j 2.6+, messages of this type are reused by the framework once the event has been appended
+            reusableMessageClass = Class.forName("org.apache.logging.log4j.message.ReusableMessage");
+        } catch (ClassNotFoundException e) {
+            reusableMessageClass = null;
+        }
+        REUSABLE_MESSAGE_CLASS = reusableMessageClass;
+    }
     static {
         Method createLayoutMethod = Arrays.stream(PatternLayout.class.getMethods())
                 .filter(method -> method.getName().equals("createLayout"))
@@ -45,27 +62,26 @@ public class Log4JLoggingAdapter extends AbstractAppender {
     private final IChannelLoggingHandler handler;
 
     public Log4JLoggingAdapter(IChannelLoggingHandler handler) {
-        super("JDAAppender", null, PATTERN_LAYOUT, false);
+        super("JDAAppender", new HandlerFilter(handler), PATTERN_LAYOUT, false);
         this.handler = handler;
     }
 
     @Override
     public void append(LogEvent event) {
-        LogLevel level = event.getLevel() == Level.INFO ? LogLevel.INFO
-                : event.getLevel() == Level.WARN ? LogLevel.WARN
-                : event.getLevel() == Level.ERROR ? LogLevel.ERROR
-                : event.getLevel() == Level.DEBUG ? LogLevel.DEBUG
-                : null;
-
+        LogLevel level = toLogLevel(event.getLevel());
         if (level != null) {
-            handler.enqueue(new LogItem(
-                    handler,
-                    event.getLoggerName(),
-                    LOG_EVENT_HAS_MILLIS ? event.getMillis() : System.currentTimeMillis(),
-                    level,
-                    LogItem.stripColors(event.getMessage().getFormattedMessage()),
-                    event.getThrown()
-            ));
+            long timestamp = LOG_EVENT_HAS_MILLIS ? event.getMillis() : System.currentTimeMillis();
+            Message message = event.getMessage();
+            if (REUSABLE_MESSAGE_CLASS != null && REUSABLE_MESSAGE_CLASS.isInstance(message)) {
+                // can't hold on to a reusable message, snapshot it now
+                handler.enqueue(event.getLoggerName(), timestamp, level, message.getFormattedMessage(), event.getThrown());
+            } else if ((message instanceof ParameterizedMessage || message instanceof SimpleMessage)
+                    && DeferredMessage.isImmutable(message.getParameters())) {
+                handler.enqueue(event.getLoggerName(), timestamp, level, RENDERER, message, null, event.getThrown());
+            } else {
+                // other messages and arguments may still be changed by the caller, snapshot them now
+                handler.enqueue(event.getLoggerName(), timestamp, level, message.getFormattedMessage(), event.getThrown());
+            }
         }
     }
 
@@ -74,4 +90,31 @@ public class Log4JLoggingAdapter extends AbstractAppender {
         return true;
     }
 
+    private static @Nullable LogLevel toLogLevel(Level level) {
+        return level == Level.INFO ? LogLevel.INFO
+                : level == Level.WARN ? LogLevel.WARN
+                : level == Level.ERROR ? LogLevel.ERROR
+                : level == Level.DEBUG ? LogLevel.DEBUG
+                : null;
+    }
+
+    /**
+     * Appender filter denying events that the handler would discard, so they're never passed to {@link #append(LogEvent)}
+     */
+    private static class HandlerFilter extends AbstractFilter {
+
+        private final IChannelLoggingHandler handler;
+
+        private HandlerFilter(IChannelLoggingHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public Result filter(LogEvent event) {
+            LogLevel level = toLogLevel(event.getLevel());
+            return level != null && handler.isLoggable(level, event.getLoggerName()) ? Result.NEUTRAL : Result.DENY;
+        }
+
+    }
+
 }
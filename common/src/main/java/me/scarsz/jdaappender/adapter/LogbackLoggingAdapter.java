@@ -4,39 +4,63 @@ import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.ThrowableProxy;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import me.scarsz.jdaappender.DeferredMessage;
 import me.scarsz.jdaappender.IChannelLoggingHandler;
-import me.scarsz.jdaappender.LogItem;
 import me.scarsz.jdaappender.LogLevel;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.helpers.MessageFormatter;
 
-public class LogbackLoggingAdapter extends AppenderBase<ILoggingEvent> {
+public class LogbackLoggingAdapter extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    private static final DeferredMessage.Renderer RENDERER = (pattern, arguments) -> MessageFormatter.arrayFormat((String) pattern, arguments).getMessage();
 
     private final IChannelLoggingHandler handler;
 
     public LogbackLoggingAdapter(IChannelLoggingHandler handler, LoggerContext context) {
         this.handler = handler;
         setContext(context);
+
+        Filter<ILoggingEvent> filter = new Filter<ILoggingEvent>() {
+            @Override
+            public FilterReply decide(ILoggingEvent event) {
+                LogLevel level = toLogLevel(event.getLevel());
+                return level != null && handler.isLoggable(level, event.getLoggerName()) ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        };
+        filter.setContext(context);
+        filter.start();
+        addFilter(filter);
+
         this.start();
     }
 
     @Override
     protected void append(ILoggingEvent event) {
-        LogLevel level = event.getLevel() == Level.INFO ? LogLevel.INFO
-                : event.getLevel() == Level.WARN ? LogLevel.WARN
-                : event.getLevel() == Level.ERROR ? LogLevel.ERROR
-                : event.getLevel() == Level.DEBUG ? LogLevel.DEBUG
-                : null;
-
+        LogLevel level = toLogLevel(event.getLevel());
         if (level != null) {
-            handler.enqueue(new LogItem(
-                    handler,
-                    event.getLoggerName(),
-                    event.getTimeStamp(),
-                    level,
-                    LogItem.stripColors(event.getMessage()),
-                    event.getThrowableProxy() instanceof ThrowableProxy ? ((ThrowableProxy) event.getThrowableProxy()).getThrowable() : null // serialized throwable data?
-            ));
+            Throwable throwable = event.getThrowableProxy() instanceof ThrowableProxy ? ((ThrowableProxy) event.getThrowableProxy()).getThrowable() : null; // serialized throwable data?
+            Object[] arguments = event.getArgumentArray();
+            if (arguments == null || arguments.length == 0) {
+                handler.enqueue(event.getLoggerName(), event.getTimeStamp(), level, event.getMessage(), throwable);
+            } else if (DeferredMessage.isImmutable(arguments)) {
+                // the event owns its argument array, so the pattern can be rendered later on the flushing thread
+                handler.enqueue(event.getLoggerName(), event.getTimeStamp(), level, RENDERER, event.getMessage(), arguments, throwable);
+            } else {
+                // the caller may still change the arguments, snapshot them now like logback's own async appenders do
+                handler.enqueue(event.getLoggerName(), event.getTimeStamp(), level, event.getFormattedMessage(), throwable);
+            }
         }
     }
 
+    private static @Nullable LogLevel toLogLevel(Level level) {
+        return level == Level.INFO ? LogLevel.INFO
+                : level == Level.WARN ? LogLevel.WARN
+                : level == Level.ERROR ? LogLevel.ERROR
+                : level == Level.DEBUG ? LogLevel.DEBUG
+                : null;
+    }
+
 }
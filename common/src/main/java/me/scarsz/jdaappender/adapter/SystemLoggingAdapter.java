@@ -2,7 +2,6 @@ package me.scarsz.jdaappender.adapter;
 
 import lombok.Getter;
 import me.scarsz.jdaappender.IChannelLoggingHandler;
-import me.scarsz.jdaappender.LogItem;
 import me.scarsz.jdaappender.LogLevel;
 import org.jetbrains.annotations.NotNull;
 
@@ -40,7 +39,9 @@ public class SystemLoggingAdapter {
         @Override
         public void println(String str) {
             super.println(str);
-            handler.enqueue(new LogItem(handler, loggerName, System.currentTimeMillis(), level, str, null));
+            if (handler.isLoggable(level, loggerName)) {
+                handler.enqueue(loggerName, System.currentTimeMillis(), level, str, null);
+            }
         }
 
         @Override
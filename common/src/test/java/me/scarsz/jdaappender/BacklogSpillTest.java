@@ -0,0 +1,104 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BacklogSpillTest {
+
+    private final HandlerConfig config = new HandlerConfig();
+
+    @Test
+    void summaryListsLevelsAndLoggers() {
+        BacklogSpill spill = new BacklogSpill(config);
+        spill.add(item("A", LogLevel.INFO));
+        spill.add(item("A", LogLevel.INFO));
+        spill.add(item("B", LogLevel.ERROR));
+
+        String[] summary = spill.getSummary().split("\n");
+        assertEquals("Caught up on a backlog of 3 lines, attached as " + spill.getFileName(), summary[0]);
+        assertEquals("Levels: ERROR 1, INFO 2", summary[1]);
+        assertEquals("Loggers: A 2, B 1", summary[2]);
+    }
+
+    @Test
+    void summaryOfSingleLineHasNoSeparators() {
+        BacklogSpill spill = new BacklogSpill(config);
+        spill.add(item("A", LogLevel.WARN));
+
+        String[] summary = spill.getSummary().split("\n");
+        assertEquals("Levels: WARN 1", summary[1]);
+        assertEquals("Loggers: A 1", summary[2]);
+    }
+
+    @Test
+    void summaryOfEmptyBacklogIsOnlyTheHeadline() {
+        BacklogSpill spill = new BacklogSpill(config);
+        assertEquals("Caught up on a backlog of 0 lines, attached as " + spill.getFileName(), spill.getSummary());
+    }
+
+    @Test
+    void summaryNamesOnlyTheNoisiestLoggers() {
+        BacklogSpill spill = new BacklogSpill(config);
+        for (int logger = 0; logger < 12; logger++) {
+            for (int i = 0; i <= logger; i++) spill.add(item("L" + logger, LogLevel.INFO));
+        }
+
+        String loggers = spill.getSummary().split("\n")[2];
+        assertTrue(loggers.startsWith("Loggers: L11 12, L10 11,"), loggers);
+        assertTrue(loggers.endsWith(", L2 3 and 2 more"), loggers);
+    }
+
+    @Test
+    void fileIsKeptWithinMaxSize() throws IOException {
+        int maxSize = 1024 * 1024;
+        BacklogSpill spill = new BacklogSpill(config, maxSize);
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) spill.add(new LogItem(null, "Logger", LogLevel.INFO, randomText(random, 200)));
+
+        String summary = spill.getSummary();
+        byte[] data = spill.finish();
+        assertTrue(data.length <= maxSize, data.length + " bytes");
+        assertTrue(spill.getDroppedLines() > 0);
+        assertEquals(20_000, spill.getLines());
+        assertTrue(summary.contains("(the last " + spill.getDroppedLines() + " lines were dropped"), summary);
+        assertEquals(spill.getLines() - spill.getDroppedLines(), countLines(data));
+    }
+
+    @Test
+    void smallBacklogIsKeptWhole() throws IOException {
+        BacklogSpill spill = new BacklogSpill(config);
+        for (int i = 0; i < 100; i++) spill.add(item("A", LogLevel.INFO));
+
+        assertEquals(0, spill.getDroppedLines());
+        assertEquals(100, countLines(spill.finish()));
+    }
+
+    private static LogItem item(String logger, LogLevel level) {
+        return new LogItem(null, logger, level, "message");
+    }
+
+    private static String randomText(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = (char) ('!' + random.nextInt(94));
+        return new String(chars);
+    }
+
+    private static int countLines(byte[] data) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8))) {
+            int lines = 0;
+            while (reader.readLine() != null) lines++;
+            return lines;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventFilterTest {
+
+    private final HandlerConfig config = new HandlerConfig();
+
+    @Test
+    void replacingMappingWithIgnoreRejectsLogger() {
+        config.mapLoggerName("com.foo", "Foo");
+        assertTrue(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+        assertTrue(config.isLoggable(LogLevel.INFO, "com.foo.Bar"));
+
+        // same key, so the map doesn't change size
+        config.getLoggerMappings().replaceAll((prefix, function) -> HandlerConfig.IGNORE);
+        assertFalse(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+        assertFalse(config.isLoggable(LogLevel.INFO, "com.foo.Bar"));
+    }
+
+    @Test
+    void replacingIgnoreThroughEntryAcceptsLoggerAgain() {
+        config.ignoreLoggerName("com.foo");
+        assertFalse(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+
+        Map.Entry<Predicate<String>, Function<String, String>> entry = config.getLoggerMappings().entrySet().iterator().next();
+        entry.setValue(name -> "Foo");
+        assertTrue(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+        assertTrue(config.isLoggable(LogLevel.INFO, "com.foo.Bar"));
+    }
+
+    @Test
+    void levelsChangedDirectlyArePickedUpOnRefresh() {
+        assertTrue(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+
+        config.getLogLevels().remove(LogLevel.INFO);
+        config.refreshEventFilter();
+        assertFalse(config.getEventFilter().accepts(LogLevel.INFO, "com.foo.Bar"));
+    }
+
+    @Test
+    void settingLevelsRebuildsFilter() {
+        config.setLogLevels(EnumSet.of(LogLevel.ERROR));
+        assertFalse(config.getEventFilter().accepts(LogLevel.WARN, "com.foo.Bar"));
+        assertTrue(config.getEventFilter().accepts(LogLevel.ERROR, "com.foo.Bar"));
+    }
+
+}
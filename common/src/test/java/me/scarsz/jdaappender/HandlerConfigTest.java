@@ -0,0 +1,27 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class HandlerConfigTest {
+
+    private final HandlerConfig config = new HandlerConfig();
+
+    @Test
+    void formattingSettersInvalidateFormattedOutput() {
+        assertInvalidates(c -> c.setColored(false));
+        assertInvalidates(c -> c.setSplitCodeBlockForLinks(true));
+        assertInvalidates(c -> c.setAllowLinkEmbeds(false));
+        assertInvalidates(c -> c.setTruncateLongItems(false));
+    }
+
+    private void assertInvalidates(Consumer<HandlerConfig> setter) {
+        int version = config.getVersion();
+        setter.accept(config);
+        assertNotEquals(version, config.getVersion());
+    }
+
+}
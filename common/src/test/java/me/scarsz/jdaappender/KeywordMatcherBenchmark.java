@@ -0,0 +1,103 @@
+package me.scarsz.jdaappender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Throughput of {@link KeywordMatcher} against the chain of filters and transformers it replaces, one
+ * {@link String#contains(CharSequence)} or {@link String#replace(CharSequence, CharSequence)} per keyword.
+ * Not run as part of the tests; after {@code mvn -pl common test-compile}, run its main method with
+ * {@code common/target/classes} and {@code common/target/test-classes} on the classpath.
+ * Arguments: amounts of keywords to measure separately, default 10, 50 and 200.
+ */
+class KeywordMatcherBenchmark {
+
+    private static final int LINES = 20_000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 20;
+    private static final String MASK = "****";
+
+    public static void main(String[] args) {
+        int[] keywordCounts = args.length > 0 ? new int[args.length] : new int[] {10, 50, 200};
+        for (int i = 0; i < args.length; i++) keywordCounts[i] = Integer.parseInt(args[i]);
+
+        for (int keywordCount : keywordCounts) {
+            Random random = new Random(keywordCount);
+            List<String> keywords = new ArrayList<>();
+            for (int i = 0; i < keywordCount; i++) keywords.add(word(random, 6 + random.nextInt(6)) + "=");
+            List<String> lines = lines(random, keywords);
+
+            KeywordMatcher matcher = new KeywordMatcher(keywords);
+            Predicate<String> filterChain = message -> false;
+            Function<String, String> transformerChain = Function.identity();
+            for (String keyword : keywords) {
+                filterChain = filterChain.or(message -> message.contains(keyword));
+                transformerChain = transformerChain.andThen(message -> message.replace(keyword, MASK));
+            }
+            Predicate<String> filters = filterChain;
+            Function<String, String> transformers = transformerChain;
+
+            System.out.printf(Locale.ROOT, "%d keywords, %,d lines%n", keywordCount, lines.size());
+            report("  deny    matcher", measure(lines, line -> matcher.find(line) ? 1 : 0));
+            report("  deny    chain  ", measure(lines, line -> filters.test(line) ? 1 : 0));
+            report("  redact  matcher", measure(lines, line -> matcher.redact(line, MASK).length()));
+            report("  redact  chain  ", measure(lines, line -> transformers.apply(line).length()));
+        }
+    }
+
+    /**
+     * @return the best time per line over all rounds, in nanoseconds
+     */
+    private static double measure(List<String> lines, ToIntFunction<String> operation) {
+        long sink = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String line : lines) sink += operation.applyAsInt(line);
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) best = Math.min(best, elapsed);
+        }
+        // keep the results alive so the work can't be eliminated
+        if (sink == Long.MIN_VALUE) System.out.println(sink);
+        return (double) best / lines.size();
+    }
+
+    private static void report(String name, double nanosPerLine) {
+        System.out.printf(Locale.ROOT, "%s %,10.1f ns/line %,12.0f lines/s%n", name, nanosPerLine, 1e9 / nanosPerLine);
+    }
+
+    /**
+     * Log lines of 60 to 200 characters, one in ten containing one of the keywords
+     */
+    private static List<String> lines(Random random, List<String> keywords) {
+        List<String> lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            StringBuilder line = new StringBuilder("[Server thread/INFO] ");
+            int length = 60 + random.nextInt(140);
+            boolean withKeyword = random.nextInt(10) == 0;
+            int keywordAt = withKeyword ? random.nextInt(length) : -1;
+            while (line.length() < length) {
+                if (keywordAt >= 0 && line.length() >= keywordAt) {
+                    line.append(keywords.get(random.nextInt(keywords.size()))).append(word(random, 8)).append(' ');
+                    keywordAt = -1;
+                } else {
+                    line.append(word(random, 2 + random.nextInt(8))).append(' ');
+                }
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = (char) ('a' + random.nextInt(26));
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,195 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeywordMatcherTest {
+
+    private static final String MASK = "****";
+
+    @Test
+    void emptyMatcherNeverMatches() {
+        KeywordMatcher matcher = matcher("");
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.find("anything"));
+        String text = "anything";
+        assertSame(text, matcher.redact(text, MASK));
+    }
+
+    @Test
+    void loneAsteriskIsLiteral() {
+        KeywordMatcher matcher = matcher("*");
+        assertFalse(matcher.isEmpty());
+        assertFalse(matcher.find("anything"));
+        assertEquals("a **** b", matcher.redact("a * b", MASK));
+    }
+
+    @Test
+    void textWithoutMatchesIsReturnedAsIs() {
+        String text = "nothing to see here";
+        assertSame(text, matcher("secret", "token=*").redact(text, MASK));
+    }
+
+    @Test
+    void keywordsAreMatchedLiterallyAndCaseSensitively() {
+        KeywordMatcher matcher = matcher("a.b", "Secret");
+        assertFalse(matcher.find("axb secret"));
+        assertTrue(matcher.find("xa.by"));
+        assertEquals("my **** is out", matcher.redact("my Secret is out", MASK));
+    }
+
+    @Test
+    void keywordsSharingSuffixesAreAllFound() {
+        // "she" fails over to "he", which completes "hers" in turn
+        KeywordMatcher matcher = matcher("he", "she", "his", "hers");
+        assertTrue(matcher.find("ushers"));
+        assertEquals("u****", matcher.redact("ushers", MASK));
+        assertEquals("t**** ****", matcher.redact("this she", MASK));
+    }
+
+    @Test
+    void overlappingMatchesAreMerged() {
+        KeywordMatcher matcher = matcher("abc", "bcd", "cdef");
+        assertEquals("x****y", matcher.redact("xabcdefy", MASK));
+        assertEquals("****", matcher.redact("abcdef", MASK));
+    }
+
+    @Test
+    void nestedMatchesAreMerged() {
+        KeywordMatcher matcher = matcher("password", "word");
+        assertEquals("my ****!", matcher.redact("my password!", MASK));
+        assertEquals("a **** b", matcher.redact("a word b", MASK));
+    }
+
+    @Test
+    void adjacentMatchesAreMerged() {
+        KeywordMatcher matcher = matcher("ab", "cd");
+        assertEquals("****", matcher.redact("abcd", MASK));
+        assertEquals("****.****", matcher.redact("ab.cd", MASK));
+        assertEquals("****", matcher.redact("abab", MASK));
+    }
+
+    @Test
+    void wildcardExtendsToTheNextWhitespace() {
+        KeywordMatcher matcher = matcher("token=*");
+        assertEquals("login **** ok", matcher.redact("login token=abc123 ok", MASK));
+        assertEquals("****", matcher.redact("token=abc123", MASK));
+        assertEquals("****\tnext", matcher.redact("token=\tnext", MASK));
+        assertEquals("a ****\n****", matcher.redact("a token=1\ntoken=2", MASK));
+    }
+
+    @Test
+    void wildcardSwallowsMatchesInsideItsSpan() {
+        KeywordMatcher matcher = matcher("key=*", "secret");
+        assertEquals("****", matcher.redact("key=secret,key=secret", MASK));
+        assertEquals("**** ****", matcher.redact("key=1 secret", MASK));
+    }
+
+    @Test
+    void wildcardAndLiteralOnTheSameTextKeepTheWiderSpan() {
+        assertEquals("**** x", matcher("id", "id*").redact("id42 x", MASK));
+        assertEquals("**** x", matcher("id*", "id").redact("id42 x", MASK));
+    }
+
+    @Test
+    void nonAsciiTextIsMatched() {
+        KeywordMatcher matcher = matcher("пароль", "密码", "🔑", "ключ=*");
+        assertTrue(matcher.find("ваш пароль"));
+        assertTrue(matcher.find("我的密码是"));
+        assertFalse(matcher.find("паролі"));
+        assertEquals("ваш ****: x", matcher.redact("ваш пароль: x", MASK));
+        assertEquals("我的****是", matcher.redact("我的密码是", MASK));
+        assertEquals("key **** here", matcher.redact("key 🔑 here", MASK));
+        assertEquals("**** ok", matcher.redact("ключ=значение ok", MASK));
+    }
+
+    @Test
+    void nonAsciiFailureTransitionsAreFollowed() {
+        // after "ab" fails on "é", the scan must fall back to "bé" rather than restart at the root
+        KeywordMatcher matcher = matcher("abc", "bé");
+        assertTrue(matcher.find("abé"));
+        assertEquals("a****", matcher.redact("abé", MASK));
+    }
+
+    @Test
+    void findAgreesWithPredicateChain() {
+        List<String> keywords = Arrays.asList("ab", "bca", "c", "aab", "cccb", "bab");
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String text = randomText(random, "abcd", random.nextInt(12));
+            boolean expected = keywords.stream().anyMatch(text::contains);
+            assertEquals(expected, matcher.find(text), text);
+        }
+    }
+
+    @Test
+    void redactAgreesWithNaiveScan() {
+        List<String> keywords = Arrays.asList("ab", "bca", "aab", "cc*", "d");
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            String text = randomText(random, "abcd ", random.nextInt(16));
+            assertEquals(naiveRedact(text, keywords), matcher.redact(text, MASK), text);
+        }
+    }
+
+    @Test
+    void wildcardScanIsNotQuadratic() {
+        // every character completes the wildcard keyword again, within a single run of non-whitespace
+        char[] chars = new char[1_000_000];
+        Arrays.fill(chars, 'a');
+        String text = new String(chars);
+        KeywordMatcher matcher = matcher("a*");
+
+        String redacted = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> matcher.redact(text, MASK));
+        assertEquals(MASK, redacted);
+    }
+
+    private static KeywordMatcher matcher(String... keywords) {
+        return new KeywordMatcher(Arrays.asList(keywords));
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        return new String(chars);
+    }
+
+    /**
+     * Mark every character covered by any match, trying each keyword at each position, then mask each marked run
+     */
+    private static String naiveRedact(String text, List<String> keywords) {
+        boolean[] covered = new boolean[text.length()];
+        for (String keyword : keywords) {
+            boolean wildcard = keyword.endsWith("*");
+            String literal = wildcard ? keyword.substring(0, keyword.length() - 1) : keyword;
+            for (int start = text.indexOf(literal); start >= 0; start = text.indexOf(literal, start + 1)) {
+                int end = start + literal.length();
+                if (wildcard) while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
+                Arrays.fill(covered, start, end, true);
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            if (!covered[i]) {
+                builder.append(text.charAt(i));
+            } else if (i == 0 || !covered[i - 1]) {
+                builder.append(MASK);
+            }
+        }
+        return builder.toString();
+    }
+
+}
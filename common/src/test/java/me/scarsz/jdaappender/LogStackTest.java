@@ -0,0 +1,169 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogStackTest {
+
+    private static final int LIMIT = MessageLimits.MAX_CONTENT_LENGTH;
+
+    private final HandlerConfig config = new HandlerConfig();
+    private final Random random = new Random(42);
+    private final IChannelLoggingHandler handler = new IChannelLoggingHandler() {
+        @Override
+        public void enqueue(LogItem logItem) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public String escapeMarkdown(String message) {
+            return message.replace("_", "\\_");
+        }
+
+        @Override
+        public ScheduledFuture<?> getScheduledFuture() {
+            return null;
+        }
+    };
+    private LogStack stack;
+    private int formatted;
+
+    @BeforeEach
+    void setUp() {
+        config.setPrefixer(prefixer("[INFO] "));
+        stack = new LogStack(config);
+        // fill the stack as the handler does, until the next item no longer fits
+        while (true) {
+            LogItem item = item(1 + random.nextInt(6));
+            int length = item.getFormattedLength(config);
+            if (!stack.canFit(length, LIMIT)) break;
+            stack.add(item, length);
+        }
+    }
+
+    @Test
+    void canFitMatchesFullReformat() {
+        assertCanFitMatchesFullReformat();
+    }
+
+    @Test
+    void canFitDoesNotFormatTheStackAgain() {
+        formatted = 0;
+        for (int i = 0; i < 1000; i++) stack.canFit(random.nextInt(LIMIT), LIMIT);
+        assertEquals(0, formatted);
+    }
+
+    @Test
+    void configChangeIsAccountedFor() {
+        stack.removeIf(item -> random.nextBoolean());
+        config.setPrefixer(prefixer("[WARN_] "));
+        assertCanFitMatchesFullReformat();
+
+        config.setUseCodeBlocks(false);
+        assertCanFitMatchesFullReformat();
+
+        config.setSplitCodeBlockForLinks(true);
+        assertCanFitMatchesFullReformat();
+
+        config.setColored(false);
+        assertCanFitMatchesFullReformat();
+    }
+
+    @Test
+    void configChangeFormatsEachItemOnce() {
+        config.setPrefixer(prefixer("> "));
+        formatted = 0;
+        for (int i = 0; i < 10; i++) stack.canFit(0, LIMIT);
+        assertEquals(stack.size(), formatted);
+    }
+
+    @Test
+    void removalThroughIteratorIsAccountedFor() {
+        Iterator<LogItem> iterator = stack.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            if (random.nextBoolean()) iterator.remove();
+        }
+        assertCanFitMatchesFullReformat();
+
+        stack.remove(stack.getItems().iterator().next());
+        assertCanFitMatchesFullReformat();
+
+        stack.removeIf(item -> item.getLevel() == LogLevel.WARN);
+        assertCanFitMatchesFullReformat();
+    }
+
+    @Test
+    void removalAfterConfigChangeIsAccountedFor() {
+        config.setPrefixer(prefixer("> "));
+        Iterator<LogItem> iterator = stack.iterator();
+        iterator.next();
+        iterator.remove();
+        assertCanFitMatchesFullReformat();
+    }
+
+    @Test
+    void clearedStackFitsAnything() {
+        stack.clear();
+        assertTrue(stack.canFit(LIMIT - 20, LIMIT));
+        assertFalse(stack.canFit(LIMIT, LIMIT));
+    }
+
+    /**
+     * Check every length around the boundary against the stack being formatted in full, as it was before the
+     * running total was kept
+     */
+    private void assertCanFitMatchesFullReformat() {
+        int remaining = LIMIT - fullReformatLength();
+        for (int length = Math.max(0, remaining - 10); length <= Math.max(0, remaining) + 5; length++) {
+            assertEquals(length + 5 <= remaining, stack.canFit(length, LIMIT), "item of length " + length);
+        }
+    }
+
+    private int fullReformatLength() {
+        int lengthSum = 0;
+        for (LogItem item : stack) lengthSum += item.format(config).length();
+
+        boolean codeBlocks = config.isUseCodeBlocks();
+        if (codeBlocks) lengthSum += "```".length() * 2;
+        lengthSum += "\n".length() * (stack.size() + (codeBlocks ? 1 : -1));
+        if (config.isColored()) {
+            lengthSum += "diff".length();
+            lengthSum += "- ".length() * stack.size();
+        }
+        if (config.isSplitCodeBlockForLinks()) {
+            lengthSum += "```".length() * 2;
+            lengthSum += "\n".length() * 2;
+            if (config.isColored()) lengthSum += "diff".length();
+        }
+        return lengthSum;
+    }
+
+    private LogItem item(int words) {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < words; i++) message.append(i == 0 ? "" : " ").append(Integer.toString(random.nextInt(), 36)).append(random.nextInt(4) == 0 ? "_" : "");
+        LogLevel level = LogLevel.values()[random.nextInt(LogLevel.values().length)];
+        return new LogItem(handler, "Logger" + random.nextInt(5), level, message.toString());
+    }
+
+    /**
+     * A prefixer counting how many times an item is formatted
+     */
+    private Function<LogItem, String> prefixer(String prefix) {
+        return item -> {
+            formatted++;
+            return prefix;
+        };
+    }
+
+}
@@ -0,0 +1,122 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageChunkerTest {
+
+    private final HandlerConfig config = new HandlerConfig();
+
+    @Test
+    void shortMessageIsNotSplit() {
+        LogItem item = item(repeat('a', 100));
+        assertTrue(MessageChunker.split(item, config).isEmpty());
+        assertEquals(repeat('a', 100), item.getMessage());
+    }
+
+    @Test
+    void chunksFitALineAndKeepTheWholeMessage() {
+        String message = repeat('a', 9000);
+        List<String> chunks = chunks(item(message));
+
+        assertEquals(5, chunks.size());
+        assertEquals(message, String.join("", chunks));
+        int room = LogItem.CLIPPING_MAX_LENGTH - config.getFormattingLength(item(""));
+        for (String chunk : chunks) assertTrue(chunk.length() <= room, "chunk of " + chunk.length());
+    }
+
+    @Test
+    void restPastMaxMessageLengthIsNoted() {
+        config.setMaxMessageLength(5000);
+        List<String> chunks = chunks(item(repeat('a', 9000)));
+
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("a [4000 characters truncated]"));
+        assertEquals(5000, String.join("", chunks).replace(" [4000 characters truncated]", "").length());
+    }
+
+    @Test
+    void unlimitedMessageIsCappedAtMaxChunks() {
+        config.setMaxMessageLength(0);
+        List<String> chunks = chunks(item(repeat('a', 1_000_000)));
+
+        assertEquals(MessageChunker.MAX_CHUNKS, chunks.size());
+        String last = chunks.get(chunks.size() - 1);
+        int kept = String.join("", chunks.subList(0, chunks.size() - 1)).length() + last.indexOf(' ');
+        assertEquals(" [" + (1_000_000 - kept) + " characters truncated]", last.substring(last.indexOf(' ')));
+    }
+
+    @Test
+    void messageJustPastMaxChunksIsCappedWithNote() {
+        config.setMaxMessageLength(0);
+        int room = LogItem.CLIPPING_MAX_LENGTH - config.getFormattingLength(item(""));
+        List<String> chunks = chunks(item(repeat('a', room * MessageChunker.MAX_CHUNKS + 1)));
+
+        assertEquals(MessageChunker.MAX_CHUNKS, chunks.size());
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("characters truncated]"));
+        for (String chunk : chunks) assertTrue(chunk.length() <= room, "chunk of " + chunk.length());
+    }
+
+    @Test
+    void longPrefixFallsBackToClipping() {
+        config.setPrefixer(item -> repeat('p', LogItem.CLIPPING_MAX_LENGTH - 50));
+        String message = repeat('a', 9000);
+        LogItem item = item(message);
+
+        assertTrue(MessageChunker.split(item, config).isEmpty());
+        assertEquals(message, item.getMessage());
+        assertTrue(item.format(config).length() <= LogItem.CLIPPING_MAX_LENGTH);
+    }
+
+    @Test
+    void prefixLongerThanALineFallsBackToClipping() {
+        config.setPrefixer(item -> repeat('p', LogItem.CLIPPING_MAX_LENGTH + 10));
+        LogItem item = item(repeat('a', 9000));
+
+        assertTrue(MessageChunker.split(item, config).isEmpty());
+    }
+
+    @Test
+    void chunkEndsAtNearbyLineBreak() {
+        int room = LogItem.CLIPPING_MAX_LENGTH - config.getFormattingLength(item(""));
+        String first = repeat('a', room - 100);
+        String second = repeat('b', 500);
+        List<String> chunks = chunks(item(first + "\r\n" + second));
+
+        assertEquals(Arrays.asList(first, second), chunks);
+    }
+
+    @Test
+    void surrogatePairIsNotSplit() {
+        int room = LogItem.CLIPPING_MAX_LENGTH - config.getFormattingLength(item(""));
+        String message = repeat('a', room - 1) + "🔑" + repeat('b', 10);
+        List<String> chunks = chunks(item(message));
+
+        assertEquals(repeat('a', room - 1), chunks.get(0));
+        assertTrue(chunks.get(1).startsWith("🔑"));
+    }
+
+    private List<String> chunks(LogItem item) {
+        List<LogItem> following = MessageChunker.split(item, config);
+        List<String> chunks = new ArrayList<>();
+        chunks.add(item.getMessage());
+        for (LogItem chunk : following) chunks.add(chunk.getMessage());
+        return chunks;
+    }
+
+    private static LogItem item(String message) {
+        return new LogItem(null, "Logger", LogLevel.INFO, message);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+}
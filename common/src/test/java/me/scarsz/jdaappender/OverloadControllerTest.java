@@ -0,0 +1,84 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OverloadControllerTest {
+
+    private final HandlerConfig config = new HandlerConfig();
+    private long now;
+    private OverloadController controller;
+
+    @BeforeEach
+    void setUp() {
+        config.setOverloadBacklog(100);
+        config.setOverloadCheckInterval(10_000);
+        now = 1_000_000;
+        controller = new OverloadController(config, () -> now);
+    }
+
+    @Test
+    void loggingFasterThanSendingStepsUp() {
+        logAndSend(500, 100);
+        now += 10_000;
+
+        List<LogItem> items = controller.update(400, null);
+        assertEquals(OverloadController.Stage.QUIET_NOISY_LOGGERS, controller.getStage());
+        assertEquals(1, items.size());
+        assertTrue(items.get(0).getMessage().startsWith("Overloaded: 500 lines logged and 100 sent in the last 10 s"), items.get(0).getMessage());
+    }
+
+    @Test
+    void sendingWhileDisabledIsNotCounted() {
+        config.setOverloadBacklog(0);
+        logAndSend(0, 1_000_000);
+        now += 10_000;
+        assertTrue(controller.update(0, null).isEmpty());
+
+        // sends from before it was enabled would otherwise outweigh the lines logged since
+        config.setOverloadBacklog(100);
+        logAndSend(500, 100);
+        now += 10_000;
+        controller.update(400, null);
+        assertEquals(OverloadController.Stage.QUIET_NOISY_LOGGERS, controller.getStage());
+    }
+
+    @Test
+    void countsFromBeforeDisablingAreDropped() {
+        logAndSend(0, 1000);
+        config.setOverloadBacklog(0);
+        now += 5_000;
+        controller.update(0, null);
+
+        config.setOverloadBacklog(100);
+        logAndSend(500, 100);
+        now += 10_000;
+        List<LogItem> items = controller.update(400, null);
+        assertEquals(OverloadController.Stage.QUIET_NOISY_LOGGERS, controller.getStage());
+        assertTrue(items.get(0).getMessage().contains("500 lines logged and 100 sent in the last 10 s"), items.get(0).getMessage());
+    }
+
+    @Test
+    void drainedBacklogStepsDown() {
+        logAndSend(500, 100);
+        now += 10_000;
+        controller.update(400, null);
+
+        logAndSend(100, 500);
+        now += 10_000;
+        List<LogItem> items = controller.update(5, null);
+        assertEquals(OverloadController.Stage.NORMAL, controller.getStage());
+        assertTrue(items.get(0).getMessage().startsWith("Recovering: "), items.get(0).getMessage());
+    }
+
+    private void logAndSend(int logged, int sent) {
+        for (int i = 0; i < logged; i++) controller.admit(new LogItem(null, "Logger" + (i % 3), LogLevel.INFO, "line " + i));
+        for (int i = 0; i < sent; i++) controller.sent();
+    }
+
+}
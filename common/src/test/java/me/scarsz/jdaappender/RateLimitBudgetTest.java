@@ -0,0 +1,72 @@
+package me.scarsz.jdaappender;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitBudgetTest {
+
+    private static final String CHANNEL = "1234";
+    private static final RateLimitBudget.Route EDIT = RateLimitBudget.Route.EDIT_MESSAGE;
+
+    private final HandlerConfig config = new HandlerConfig();
+    private long now;
+    private RateLimitBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        config.setMessageRateLimit(5);
+        config.setMessageRateLimitWindow(5000);
+        now = 10_000;
+        budget = new RateLimitBudget(config, () -> now);
+    }
+
+    @Test
+    void unknownBucketHasNoDelay() {
+        assertEquals(0, budget.getDelay(CHANNEL, EDIT));
+    }
+
+    @Test
+    void burstIsHeldBackUntilTheWindowResets() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, budget.getDelay(CHANNEL, EDIT), "request " + (i + 1));
+            budget.consume(CHANNEL, EDIT);
+            now += 100;
+        }
+
+        // the window started with the first request, 500 ms ago
+        assertEquals(4500, budget.getDelay(CHANNEL, EDIT));
+        now += 4499;
+        assertEquals(1, budget.getDelay(CHANNEL, EDIT));
+        now += 1;
+        assertEquals(0, budget.getDelay(CHANNEL, EDIT));
+    }
+
+    @Test
+    void trickleIsNeverHeldBack() {
+        for (int i = 0; i < 50; i++) {
+            assertEquals(0, budget.getDelay(CHANNEL, EDIT), "request " + (i + 1));
+            budget.consume(CHANNEL, EDIT);
+            now += 1000;
+        }
+    }
+
+    @Test
+    void channelsAndRoutesHaveSeparateBuckets() {
+        for (int i = 0; i < 5; i++) budget.consume(CHANNEL, EDIT);
+
+        assertEquals(5000, budget.getDelay(CHANNEL, EDIT));
+        assertEquals(0, budget.getDelay(CHANNEL, RateLimitBudget.Route.SEND_MESSAGE));
+        assertEquals(0, budget.getDelay("5678", EDIT));
+    }
+
+    @Test
+    void zeroLimitNeverHoldsBack() {
+        config.setMessageRateLimit(0);
+        for (int i = 0; i < 20; i++) budget.consume(CHANNEL, EDIT);
+
+        assertEquals(0, budget.getDelay(CHANNEL, EDIT));
+    }
+
+}
@@ -5,12 +5,19 @@ import lombok.SneakyThrows;
 import lombok.Synchronized;
 import me.scarsz.jdaappender.adapter.JavaLoggingAdapter;
 import me.scarsz.jdaappender.adapter.SystemLoggingAdapter;
+import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
+import net.dv8tion.jda.api.requests.restaction.MessageEditAction;
+import net.dv8tion.jda.api.utils.AttachedFile;
+import net.dv8tion.jda.api.utils.AttachmentUpdate;
+import net.dv8tion.jda.api.utils.FileUpload;
 import net.dv8tion.jda.api.utils.MarkdownSanitizer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -23,26 +30,33 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.regex.Pattern;
 
 public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable {
 
     @Getter private ScheduledExecutorService executor;
-    @Getter private ScheduledFuture<?> scheduledFuture;
+    @Getter private FlushScheduler scheduler;
 
     /**
-     * Schedule the handler to asynchronously flush to the logging channel every second.
+     * Whether the last flush couldn't make progress on a non-empty backlog, such as while the channel is unavailable.
+     * Backlog thresholds don't wake the scheduler up while stalled, to not spin on a backlog that can't be sent.
+     */
+    private volatile boolean stalled = false;
+
+    /**
+     * Schedule the handler to asynchronously flush to the logging channel, adapting to the amount of logging.
+     * Flushes happen every {@link HandlerConfig#getMinFlushDelay()} milliseconds while log items keep arriving.
      * @return this channel logging handler
      */
     public ChannelLoggingHandler schedule() {
-        return schedule(1500, TimeUnit.MILLISECONDS);
+        return schedule(config.getMinFlushDelay(), TimeUnit.MILLISECONDS);
     }
     /**
-     * Schedule the handler to asynchronously flush to the logging channel every {period} {unit}.
-     * Default is every second.
-     * @param period amount of the given unit between flushes
+     * Schedule the handler to asynchronously flush to the logging channel every {period} {unit} while log items keep
+     * arriving, backing off up to {@link HandlerConfig#getMaxFlushDelay()} while idle.
+     * Flushes happen immediately when the backlog crosses {@link HandlerConfig#getFlushLineThreshold()} or
+     * {@link HandlerConfig#getFlushByteThreshold()}, or when an error is logged with {@link HandlerConfig#isFlushOnError()}.
+     * @param period amount of the given unit between flushes while log items keep arriving
      * @param unit the unit that the given amount is expressed in
      * @return this channel logging handler
      */
@@ -51,31 +65,66 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
         if (executor == null) {
             executor = Executors.newSingleThreadScheduledExecutor();
         }
-        if (scheduledFuture == null) {
-            scheduledFuture = executor.scheduleAtFixedRate(() -> {
-                try {
-                    this.flush();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }, period, period, unit);
+        if (scheduler == null) {
+            scheduler = new FlushScheduler(executor, config, unit.toMillis(period), this::flushItems).start();
         }
         return this;
     }
 
+    @Override
+    public @Nullable ScheduledFuture<?> getScheduledFuture() {
+        FlushScheduler scheduler = this.scheduler;
+        return scheduler != null ? scheduler.getFuture() : null;
+    }
+
+    @Override
+    public void stopScheduling() {
+        FlushScheduler scheduler = this.scheduler;
+        if (scheduler != null) scheduler.shutdown();
+    }
+
     /**
-     * RegEx pattern used to check if a URL contains a link for use with {@link HandlerConfig#isAllowLinkEmbeds()}
+     * @return the items making up the message currently being written to, a {@link LogStack}, to synchronize on while
+     *         accessing it
      */
-    private static final Pattern URL_PATTERN = Pattern.compile("https?:\\/\\/((?:[a-zA-Z0-9](?:[a-zA-Z0-9-]{0,61}[a-zA-Z0-9])?\\.)+[a-zA-Z0-9][a-zA-Z0-9-]{0,61}[a-zA-Z0-9]:?\\d*\\/?[a-zA-Z0-9_\\/\\-#.]*\\??[a-zA-Z0-9\\-_~:\\/?#\\[\\]@!$&'()*+,;=%.]*)");
+    public Set<LogItem> getStack() {
+        return stack;
+    }
 
     @Getter private final HandlerConfig config = new HandlerConfig();
-    @Getter private final Deque<LogItem> messageQueue = new LinkedList<>();
-    private final Deque<LogItem> unprocessedQueue = new ConcurrentLinkedDeque<>();
-    @Getter private final Set<LogItem> stack = new LinkedHashSet<>();
+    /**
+     * Processed items waiting to be sent, in a lane per level. This used to be a {@code Deque<LogItem>}; it's a
+     * {@link LaneQueue} instead since items no longer leave in the order they entered, so the deque operations on
+     * either end have no meaning for it anymore.
+     */
+    @Getter private final LaneQueue messageQueue = new LaneQueue(config);
+    private final LogRingBuffer unprocessedQueue;
+    private final LogStack stack = new LogStack(config);
+    private final MessageRenderer renderer = new MessageRenderer(config);
+    private final ExceptionGroups exceptionGroups = new ExceptionGroups(config);
+    private LogItem lastItem = null;
     @Getter private final AtomicBoolean dirtyBit = new AtomicBoolean();
     @Getter private Supplier<MessageChannel> channelSupplier;
     private final Set<Runnable> detachRunnables = new HashSet<>();
-    private Message currentMessage = null;
+    private volatile Message currentMessage = null;
+    private final RateLimitBudget rateLimits = new RateLimitBudget(config);
+    private final OverloadController overload = new OverloadController(config);
+
+    /**
+     * The content of the request last made for {@link #currentMessage}, to skip edits that wouldn't change anything
+     */
+    private volatile MessageRenderer.Rendered lastSent = null;
+
+    /**
+     * When the request held back for the rate limit budget can be made, in epoch milliseconds
+     */
+    private volatile long postponedUntil = 0;
+
+    /**
+     * Tail of the chain of Discord requests. Each request is only started once the previous one has completed,
+     * so there's at most one request in flight while the next message content is being packed.
+     */
+    private CompletableFuture<?> pendingSend = CompletableFuture.completedFuture(null);
 
     public ChannelLoggingHandler(@NotNull Supplier<MessageChannel> channelSupplier) {
         this(channelSupplier, null);
@@ -83,71 +132,220 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
     public ChannelLoggingHandler(@NotNull Supplier<MessageChannel> channelSupplier, @Nullable Consumer<HandlerConfig> configConsumer) {
         this.channelSupplier = channelSupplier;
         if (configConsumer != null) configConsumer.accept(this.config);
+        this.unprocessedQueue = new LogRingBuffer(this.config);
     }
 
     public void enqueue(LogItem item) {
-        unprocessedQueue.add(item);
+        if (unprocessedQueue.offer(item)) onEnqueue(item.getLevel());
+    }
+
+    @Override
+    public boolean isLoggable(@NotNull LogLevel level, @Nullable String logger) {
+        return config.getEventFilter().accepts(level, logger);
+    }
+
+    @Override
+    public void enqueue(@NotNull String logger, long timestamp, @NotNull LogLevel level, @Nullable String message, @Nullable Throwable throwable) {
+        if (unprocessedQueue.offer(logger, timestamp, level, message, throwable)) onEnqueue(level);
+    }
+
+    @Override
+    public void enqueue(@NotNull String logger, long timestamp, @NotNull LogLevel level, @NotNull DeferredMessage.Renderer renderer,
+                        @Nullable Object source, @Nullable Object[] arguments, @Nullable Throwable throwable) {
+        if (unprocessedQueue.offer(logger, timestamp, level, renderer, source, arguments, throwable)) onEnqueue(level);
+    }
+
+    /**
+     * Let the scheduler know that an item was enqueued, waking it up if the backlog calls for an immediate flush
+     */
+    private void onEnqueue(LogLevel level) {
+        FlushScheduler scheduler = this.scheduler;
+        if (scheduler == null) return;
+
+        if ((level == LogLevel.ERROR && config.isFlushOnError())
+                || (!stalled && (unprocessedQueue.size() >= config.getFlushLineThreshold() || unprocessedQueue.getBytes() >= config.getFlushByteThreshold()))) {
+            scheduler.wake();
+        } else {
+            scheduler.nudge();
+        }
     }
 
     private void process(LogItem item) {
         if (!config.getLogLevels().contains(item.getLevel())) return;
         if (config.resolveLoggerName(item.getLogger()) == null) return;
 
-        // check for any filtering transformers
-        for (Map.Entry<Predicate<LogItem>, Function<String, String>> entry : config.getMessageTransformers().entrySet()) {
-            if (entry.getKey().test(item) && entry.getValue().apply(item.getMessage()) == null) {
+        if (!config.getTransformerChain().apply(item)) return;
+
+        synchronized (stack) {
+            if (item.getThrowable() != null) {
+                LogItem groupedInto = exceptionGroups.group(item);
+                if (groupedInto != null) {
+                    // the repeat counter is shown by editing the live message, if the first item has already been sent
+                    if (stack.contains(groupedInto)) dirtyBit.set(true);
+                    return;
+                }
+            } else if (config.isCollapseDuplicates() && collapseDuplicate(item)) {
                 return;
             }
-        }
 
-        // allow transformers to modify log message if no filters denied it
-        for (Map.Entry<Predicate<LogItem>, Function<String, String>> entry : config.getMessageTransformers().entrySet()) {
-            if (entry.getKey().test(item)) {
-                item.setMessage(entry.getValue().apply(item.getMessage()));
-            }
+            // repeats counted above are never sent on their own, so they don't count as logged either
+            if (!overload.admit(item)) return;
         }
 
-        Set<LogItem> clipped = item.clip(config, (int) (Math.ceil((double) (10_000 - Message.MAX_CONTENT_LENGTH) / Message.MAX_CONTENT_LENGTH)));
+        List<LogItem> chunks = MessageChunker.split(item, config);
         messageQueue.add(item);
-        messageQueue.addAll(clipped);
+        messageQueue.addAll(chunks);
+        synchronized (stack) {
+            lastItem = chunks.isEmpty() ? item : null;
+        }
+    }
+
+    /**
+     * Count the item as a repeat of the previously logged item if it's a duplicate of it, and that item is either
+     * still waiting to be sent or has room left in the live message for its repeat counter
+     * @return true if the item was counted as a repeat, and shouldn't be logged
+     */
+    private boolean collapseDuplicate(LogItem item) {
+        LogItem last = lastItem;
+        if (last == null || !last.isDuplicate(item)) return false;
+
+        if (!stack.contains(last)) {
+            last.addRepeat(item.getTimestamp());
+            return true;
+        }
+
+        int previousLength = last.getFormattedLength(config);
+        long previousOccurrence = last.addRepeat(item.getTimestamp());
+        if (!stack.resize(last, previousLength, last.getFormattedLength(config))) {
+            last.removeRepeat(previousOccurrence);
+            return false;
+        }
+        // the repeat counter is shown by editing the live message
+        dirtyBit.set(true);
+        return true;
     }
 
     @Override
     public void flush() {
+        flushItems();
+    }
+
+    /**
+     * Process enqueued log items and send them to the logging channel
+     * @return whether any log items were processed or sent
+     */
+    private boolean flushItems() {
+        config.refreshEventFilter();
+        boolean worked = false;
+
+        long dropped = unprocessedQueue.drainDropped();
+        if (dropped > 0) {
+            messageQueue.add(new LogItem(this, "Appender", LogLevel.WARN, dropped + " lines dropped"));
+        }
+
+        // items stay in the ring buffer while the channel isn't accepting them, so it applies the overflow policy
         LogItem currentItem;
-        while ((currentItem = unprocessedQueue.poll()) != null) {
+        while (messageQueue.size() < unprocessedQueue.getCapacity() && (currentItem = unprocessedQueue.poll(this)) != null) {
             process(currentItem);
+            worked = true;
+        }
+        synchronized (stack) {
+            messageQueue.addAll(overload.update(messageQueue.size(), this));
         }
 
         MessageChannel loggingChannel = channelSupplier.get();
         if (loggingChannel != null && loggingChannel.getJDA().getStatus() == JDA.Status.CONNECTED) {
             LogItem logItem;
             synchronized (stack) {
-                while ((logItem = messageQueue.poll()) != null) {
+                if (isBacklogOverSpillThreshold()) {
+                    spillBacklog(loggingChannel);
+                    worked = true;
+                }
+
+                while ((logItem = messageQueue.peek()) != null) {
                     if (logItem.getMessage() == null && logItem.getThrowable() == null) {
                         // Nothing to log, likely due to being cleared during formatting
+                        messageQueue.poll();
                         continue;
                     }
 
-                    if (logItem.getFormattedLength(config) > LogItem.CLIPPING_MAX_LENGTH) {
+                    int formattedLength = logItem.getFormattedLength(config);
+                    if (formattedLength > LogItem.CLIPPING_MAX_LENGTH) {
+                        messageQueue.poll();
                         throw new IllegalStateException("Log item longer than Discord's max content length: " + logItem);
                     }
 
-                    if (!canFit(logItem)) {
-                        if (stack.isEmpty()) throw new IllegalStateException("Can't fit LogItem into empty stack: " + logItem);
+                    if (!stack.canFit(logItem, formattedLength)) {
+                        if (stack.isEmpty()) {
+                            messageQueue.poll();
+                            throw new IllegalStateException("Can't fit LogItem into empty stack: " + logItem);
+                        }
+
+                        // the stack is full, leave the rest queued until the request in flight has completed,
+                        // and until the final edit of the full message fits in the rate limit budget
+                        if (!pendingSend.isDone()) break;
+                        if (dirtyBit.get() && getRateLimitDelay(loggingChannel) > 0) break;
                         dumpStack();
                     }
 
-                    stack.add(logItem);
+                    messageQueue.poll();
+                    stack.add(logItem, formattedLength);
+                    overload.sent();
                     dirtyBit.set(true);
+                    worked = true;
                 }
 
-                if (dirtyBit.get() && !stack.isEmpty()) {
-                    currentMessage = updateMessage();
+                // held back requests keep collecting lines until the budget allows another request
+                if (dirtyBit.get() && !stack.isEmpty() && pendingSend.isDone() && getRateLimitDelay(loggingChannel) == 0) {
+                    updateMessage();
                     dirtyBit.set(false);
+                    worked = true;
                 }
             }
         }
+
+        stalled = !worked && (!messageQueue.isEmpty() || unprocessedQueue.size() > 0);
+        return worked;
+    }
+
+    /**
+     * Flush all pending log items and wait for the resulting Discord requests to complete. Intended for shutdown.
+     * @param timeout the maximum amount of time to wait
+     * @param unit the unit that the timeout is expressed in
+     * @return true if everything was sent, false if the timeout elapsed or the logging channel is unavailable
+     */
+    @Override
+    public boolean flushAndWait(long timeout, @NotNull TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            flush();
+
+            CompletableFuture<?> pending;
+            long postponed;
+            synchronized (stack) {
+                pending = pendingSend;
+                boolean idle = !dirtyBit.get() && messageQueue.isEmpty() && unprocessedQueue.size() == 0;
+                postponed = postponedUntil - System.currentTimeMillis();
+                // nothing was sent, either everything is done or no progress can be made
+                if (pending.isDone() && (idle || postponed <= 0)) return idle;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            try {
+                if (pending.isDone()) {
+                    // nothing in flight, the next request is held back for the rate limit budget
+                    Thread.sleep(Math.min(postponed, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+                } else {
+                    pending.get(remaining, TimeUnit.NANOSECONDS);
+                }
+            } catch (TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException ignored) {}
+        }
     }
 
     /**
@@ -156,10 +354,16 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
     @Synchronized("stack")
     public void dumpStack() {
         try {
-            if (!stack.isEmpty()) updateMessage();
+            if (!stack.isEmpty() && dirtyBit.get()) updateMessage();
         } catch (IllegalStateException ignored) {}
+        exceptionGroups.retire(stack.getItems());
+        if (lastItem != null && stack.contains(lastItem)) lastItem = null;
         stack.clear();
-        currentMessage = null;
+        dirtyBit.set(false);
+        pendingSend = pendingSend.thenRun(() -> {
+            currentMessage = null;
+            lastSent = null;
+        });
     }
 
     /**
@@ -169,36 +373,15 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
      */
     @Synchronized("stack")
     public boolean canFit(LogItem logItem) {
-        int lengthSum = 0;
-        for (LogItem item : stack) {
-            String formatted = item.format(config);
-            int length = formatted.length();
-            lengthSum += length;
-        }
-
-        boolean codeBlocks = config.isUseCodeBlocks();
-        if (codeBlocks) lengthSum += "```".length() * 2; // code block backticks
-        lengthSum += "\n".length() * (stack.size() + (codeBlocks ? 1 : -1)); // newlines (one per element + 1 (with code blocks) or - 1 (without code blocks))
-
-        if (config.isColored()) {
-            lengthSum += "diff".length(); // language
-            lengthSum += "- ".length() * stack.size(); // language symbols
-        }
-
-        if (config.isSplitCodeBlockForLinks()) {
-            lengthSum += "```".length() * 2;
-            lengthSum += "\n".length() * 2;
-            if (config.isColored()) {
-                lengthSum += "diff".length();
-            }
-        }
-
-        return lengthSum + logItem.format(config).length() + 5 <= Message.MAX_CONTENT_LENGTH;
+        return stack.canFit(logItem, logItem.getFormattedLength(config));
     }
 
-    private Message updateMessage() throws IllegalStateException {
+    /**
+     * Render the current stack and chain a request to send it after the request in flight, if any
+     */
+    private void updateMessage() throws IllegalStateException {
         MessageChannel channel;
-        StringJoiner joiner;
+        MessageRenderer.Rendered content;
 
         synchronized (stack) {
             if (stack.isEmpty()) throw new IllegalStateException("No messages on stack");
@@ -206,78 +389,172 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
             channel = channelSupplier.get();
             if (channel == null) throw new IllegalStateException("Channel unavailable");
 
-            joiner = new StringJoiner("\n");
-            for (LogItem item : stack) {
-                boolean willSplit = config.isSplitCodeBlockForLinks() && item.getMessage() != null && URL_PATTERN.matcher(item.getMessage()).find();
+            content = config.getOutputMode() == OutputMode.EMBEDS
+                    ? renderer.renderEmbeds(stack, LogItem::hasLink)
+                    : renderer.render(stack.getItems(), LogItem::hasLink);
 
-                String formatted = item.format(config);
+            // an edit to the same content as the last request, such as after a line was filtered out, changes nothing
+            if (content.isSameAs(lastSent)) return;
+            lastSent = content;
+        }
 
-                if (!willSplit && config.isColored()) {
-                    formatted = item.getLevel().getLevelSymbol() + " " + formatted;
-                }
+        pendingSend = pendingSend
+                .thenCompose(v -> sendOrEditMessage(content, channel, true))
+                .handle((message, throwable) -> {
+                    if (throwable == null) {
+                        currentMessage = message;
+                    } else {
+                        lastSent = null;
+                        reportSendFailure(throwable);
+                    }
+                    return null;
+                });
+        pendingSend.thenRun(this::onSendComplete);
+    }
 
-                if (willSplit) {
-                    joiner.add("```\n" + formatted + "\n```" + (config.isColored() ? "diff" : ""));
-                } else {
-                    joiner.add(formatted);
-                }
-            }
+    private void reportSendFailure(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (!(cause instanceof Exception) || !isInterruptedException((Exception) cause)) cause.printStackTrace();
+    }
+
+    /**
+     * Milliseconds until the next request for the live message fits in the channel's rate limit budget.
+     * If it has to be held back, a flush is requested for when it can be made.
+     */
+    private long getRateLimitDelay(MessageChannel channel) {
+        RateLimitBudget.Route route = currentMessage != null ? RateLimitBudget.Route.EDIT_MESSAGE : RateLimitBudget.Route.SEND_MESSAGE;
+        long delay = rateLimits.getDelay(channel.getId(), route);
+        if (delay > 0) {
+            postponedUntil = System.currentTimeMillis() + delay;
+            FlushScheduler scheduler = this.scheduler;
+            if (scheduler != null) scheduler.wakeAfter(delay);
         }
+        return delay;
+    }
 
-        boolean codeBlock = config.isUseCodeBlocks();
-        String full = codeBlock ? "```" + (config.isColored() ? "diff" : "") + "\n" + joiner + "```" : joiner.toString();
+    /**
+     * Whether the processed items waiting to be sent add up to more than {@link HandlerConfig#getBacklogSpillThreshold()}
+     */
+    private boolean isBacklogOverSpillThreshold() {
+        long threshold = config.getBacklogSpillThreshold();
+        if (threshold <= 0) return false;
 
-        if (codeBlock) {
-            // safeguard against empty codeblocks
-            full = full.replace("```" + (config.isColored() ? "diff" : "") + "```", "");
-            full = full.replace("```" + (config.isColored() ? "diff" : "") + "\n```", "");
+        long bytes = 0;
+        for (LogItem item : messageQueue) {
+            if ((bytes += item.estimateSize()) > threshold) return true;
         }
+        return false;
+    }
 
-        // safeguard against empty lines
-        while (full.contains("\n\n")) full = full.replace("\n\n", "\n");
+    /**
+     * Finish the live message, then write everything waiting to be sent into a single file and chain a request to
+     * send it along with a summary. The file is kept within {@link MessageLimits#MAX_ATTACHMENT_SIZE} by dropping the
+     * most recent lines, which the summary notes. Live messages resume with the next item.
+     */
+    private void spillBacklog(MessageChannel channel) {
+        dumpStack();
 
-        try {
-            // Make at most two attempts to process message.
-            // If the message is missing on the first attempt, try again.
-            // If the message runs into anything else, throw to higher catch
-            for (int i = 0; i < 2; i++) {
-                try {
-                    return sendOrEditMessage(full, channel);
-                } catch (ErrorResponseException ex) {
-                    if (i == 0 && ex.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
-                        currentMessage = null;
-                        continue;
-                    }
-                    throw ex;
+        // the file lists the lines in the order they were logged, rather than in the order of the lanes
+        List<LogItem> backlog = new ArrayList<>(messageQueue);
+        messageQueue.clear();
+        backlog.sort(Comparator.comparingLong(LogItem::getTimestamp));
+
+        BacklogSpill spill = new BacklogSpill(config);
+        for (LogItem item : backlog) {
+            if (item.getMessage() != null || item.getThrowable() != null) spill.add(item);
+        }
+        exceptionGroups.clear();
+        lastItem = null;
+
+        String summary = spill.getSummary();
+        byte[] data = spill.finish();
+        pendingSend = pendingSend
+                .thenCompose(v -> {
+                    rateLimits.consume(channel.getId(), RateLimitBudget.Route.SEND_MESSAGE);
+                    return channel.sendMessage(summary).addFiles(FileUpload.fromData(data, spill.getFileName())).submit();
+                })
+                .handle((message, throwable) -> {
+                    if (throwable != null) reportSendFailure(throwable);
+                    return null;
+                });
+        pendingSend.thenRun(this::onSendComplete);
+    }
+
+    /**
+     * Send the given content as a new message, or edit it into {@link #currentMessage}.
+     * If the current message has been deleted, a new one is sent instead. If the content is blocked by Discord's
+     * harmful link filter, it's sent again with the links defused.
+     */
+    private CompletableFuture<Message> sendOrEditMessage(MessageRenderer.Rendered full, MessageChannel channel, boolean retry) {
+        Message target = currentMessage;
+        rateLimits.consume(channel.getId(), target != null ? RateLimitBudget.Route.EDIT_MESSAGE : RateLimitBudget.Route.SEND_MESSAGE);
+        CompletableFuture<Message> future;
+        if (target != null) {
+            MessageEditAction action = full.getEmbeds() != null
+                    ? target.editMessageEmbeds(buildEmbeds(full.getEmbeds()))
+                    : target.editMessage(full.getContent());
+            if (!full.getAttachments().isEmpty()) {
+                // keep what's already attached, only uploading the stack traces of items added since
+                List<AttachedFile> attachments = new ArrayList<>();
+                Set<String> attached = new HashSet<>();
+                for (Message.Attachment attachment : target.getAttachments()) {
+                    attachments.add(AttachmentUpdate.fromAttachment(attachment));
+                    attached.add(attachment.getFileName());
                 }
+                for (TraceAttachment attachment : full.getAttachments()) {
+                    if (!attached.contains(attachment.getFileName())) attachments.add(FileUpload.fromData(attachment.getData(), attachment.getFileName()));
+                }
+                action = action.setAttachments(attachments);
             }
-            throw new RuntimeException("Unexpected error: Failed to update message for unknown reason.");
-        } catch (ErrorResponseException ex) {
-            if (ex.getErrorResponse() == ErrorResponse.MESSAGE_BLOCKED_BY_HARMFUL_LINK_FILTER) {
-                full = URL_PATTERN.matcher(full).replaceAll("$1");
-                return sendOrEditMessage(full, channel);
+            future = action.submit();
+        } else {
+            MessageCreateAction action = full.getEmbeds() != null
+                    ? channel.sendMessageEmbeds(buildEmbeds(full.getEmbeds()))
+                    : channel.sendMessage(full.getContent());
+            for (TraceAttachment attachment : full.getAttachments()) {
+                action = action.addFiles(FileUpload.fromData(attachment.getData(), attachment.getFileName()));
             }
-            throw ex;
+            future = action.submit();
         }
-    }
 
-    private Message sendOrEditMessage(String full, MessageChannel channel) throws ErrorResponseException {
-        try {
-            if (currentMessage != null) {
-                return currentMessage.editMessage(full).submit().get();
-            } else {
-                return channel.sendMessage(full).submit().get();
-            }
-        } catch (ExecutionException | InterruptedException e) {
-            if (this.isInterruptedException(e)) return currentMessage;
+        return future.handle((message, throwable) -> {
+            if (throwable == null) return CompletableFuture.completedFuture(message);
 
-            Throwable cause = e.getCause();
-            if (cause instanceof ErrorResponseException) {
-                throw (ErrorResponseException) cause;
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (retry && cause instanceof ErrorResponseException) {
+                ErrorResponseException ex = (ErrorResponseException) cause;
+                if (target != null && ex.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+                    currentMessage = null;
+                    return sendOrEditMessage(full, channel, true);
+                }
+                if (ex.getErrorResponse() == ErrorResponse.MESSAGE_BLOCKED_BY_HARMFUL_LINK_FILTER) {
+                    return sendOrEditMessage(full.withoutLinkSchemes(), channel, false);
+                }
             }
 
-            throw new RuntimeException(e);
+            CompletableFuture<Message> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cause);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
+
+    private static List<MessageEmbed> buildEmbeds(List<MessageRenderer.RenderedEmbed> rendered) {
+        List<MessageEmbed> embeds = new ArrayList<>(rendered.size());
+        for (MessageRenderer.RenderedEmbed embed : rendered) {
+            embeds.add(new EmbedBuilder()
+                    .setColor(embed.getLevel().getColor())
+                    .setDescription(embed.getDescription().getContent())
+                    .build());
         }
+        return embeds;
+    }
+
+    /**
+     * Flush again once a request completes, so content packed while it was in flight is sent without delay
+     */
+    private void onSendComplete() {
+        FlushScheduler scheduler = this.scheduler;
+        if (scheduler != null) scheduler.wake();
     }
 
     /**
@@ -308,9 +585,9 @@ public class ChannelLoggingHandler implements IChannelLoggingHandler, Flushable
      * @see #schedule(long, TimeUnit)
      */
     public void shutdownExecutor() {
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(false);
-            scheduledFuture = null;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
         }
         if (executor != null) {
             executor.shutdown();